@@ -0,0 +1,238 @@
+//
+// ModelStress.java
+//
+
+package net.ech.checkers;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Stresses a Model with writers making moves in it and many readers
+ * watching it, all at once, and checks that no reader ever sees a torn
+ * state: the moves of every snapshot a reader takes must be exactly the
+ * legal moves of its game state, every copy of the game state must be a
+ * possible position, and every change must be heard by the listeners
+ * exactly once.  Reports the reads
+ * per second at 1, 2, 4, 8 and 16 readers, to show whether reads scale.
+ *
+ * Usage: ModelStress [seconds [writers]]
+ */
+public class ModelStress implements Constants
+{
+    private final static int DEFAULT_SECONDS = 2;
+    private final static int DEFAULT_WRITERS = 2;
+    private final static int[] READER_COUNTS = { 1, 2, 4, 8, 16 };
+
+    // Plies after which a writer starts a new game.
+    private final static int MAX_PLIES = 150;
+
+    private Model model = new Model ();
+    private volatile boolean running;
+    private AtomicLong reads = new AtomicLong ();
+    private AtomicLong writes = new AtomicLong ();
+    private AtomicLong staleWrites = new AtomicLong ();
+    private AtomicLong heard = new AtomicLong ();
+    private AtomicLong errors = new AtomicLong ();
+
+    public static void main (String[] args)
+        throws InterruptedException
+    {
+        int seconds =
+            args.length > 0 ? Integer.parseInt (args[0]) : DEFAULT_SECONDS;
+        int writers =
+            args.length > 1 ? Integer.parseInt (args[1]) : DEFAULT_WRITERS;
+
+        System.out.println (writers + " writers, " + seconds + " s per run");
+        System.out.println ("readers\treads/s\twrites/s\tstale\terrors");
+        long totalErrors = 0;
+        for (int i = 0; i < READER_COUNTS.length; ++i)
+        {
+            ModelStress stress = new ModelStress ();
+            stress.run (READER_COUNTS[i], writers, seconds * 1000L);
+            totalErrors += stress.errors.get ();
+        }
+        if (totalErrors > 0)
+        {
+            System.out.println ("FAILED");
+            System.exit (1);
+        }
+    }
+
+    private void run (int readerCount, int writerCount, long millis)
+        throws InterruptedException
+    {
+        model.addModelListener (new ModelListener ()
+        {
+            public void modelChanged (Model model)
+            {
+                heard.incrementAndGet ();
+            }
+        });
+        model.restart ();
+        heard.set (0);
+
+        List threads = new ArrayList ();
+        for (int i = 0; i < writerCount; ++i)
+        {
+            final long seed = i;
+            threads.add (new Thread (new Runnable ()
+            {
+                public void run ()
+                {
+                    write (new Random (seed));
+                }
+            }));
+        }
+        for (int i = 0; i < readerCount; ++i)
+        {
+            threads.add (new Thread (new Runnable ()
+            {
+                public void run ()
+                {
+                    read ();
+                }
+            }));
+        }
+
+        running = true;
+        for (Iterator it = threads.iterator (); it.hasNext (); )
+        {
+            ((Thread) it.next ()).start ();
+        }
+        Thread.sleep (millis);
+        running = false;
+        for (Iterator it = threads.iterator (); it.hasNext (); )
+        {
+            ((Thread) it.next ()).join ();
+        }
+
+        if (heard.get () != writes.get ())
+        {
+            System.out.println ("heard " + heard.get () + " changes of " +
+                writes.get ());
+            errors.incrementAndGet ();
+        }
+        System.out.println (readerCount + "\t" +
+            reads.get () * 1000 / millis + "\t" +
+            writes.get () * 1000 / millis + "\t" +
+            staleWrites.get () + "\t" + errors.get ());
+    }
+
+    //
+    // Make random moves, each in the state in which it was chosen, and
+    // start a new game when one ends.
+    //
+    private void write (Random random)
+    {
+        int plies = 0;
+        while (running)
+        {
+            GameState gameState = model.copyGameState ();
+            if (gameState.getActivePlayer () == NULL_PLAYER ||
+                plies >= MAX_PLIES)
+            {
+                model.restart ();
+                writes.incrementAndGet ();
+                plies = 0;
+                continue;
+            }
+
+            Move[] moves = Rules.findMoves (gameState);
+            Move move = moves[random.nextInt (moves.length)];
+            try
+            {
+                if (model.executeMove (gameState, move))
+                {
+                    writes.incrementAndGet ();
+                    ++plies;
+                }
+                else
+                {
+                    staleWrites.incrementAndGet ();
+                }
+            }
+            catch (IllegalArgumentException e)
+            {
+                // The state matched, so the move must have been legal.
+                System.out.println ("rejected " + move);
+                errors.incrementAndGet ();
+            }
+        }
+    }
+
+    //
+    // Read the model every way a watcher might, checking what is seen.
+    //
+    private void read ()
+    {
+        long count = 0;
+        while (running)
+        {
+            // A snapshot's moves are all hops or all slides, all of the
+            // active player's pieces, and all the legal moves.
+            Model.Snapshot snapshot = model.getSnapshot ();
+            GameState seen = snapshot.gameState;
+            Move[] moves = snapshot.moves;
+            int moveCount = moves == null ? 0 : moves.length;
+            int legalCount = seen.getActivePlayer () == NULL_PLAYER
+                ? 0
+                : Rules.findMoves (seen).length;
+            if (moveCount != legalCount)
+            {
+                System.out.println ("torn snapshot " +
+                    BoardDiagram.format (seen));
+                errors.incrementAndGet ();
+            }
+            for (int i = 0; i < moveCount; ++i)
+            {
+                if (moves[i].isHop () != moves[0].isHop () ||
+                    seen.getPlayerAt (moves[i].getOrigin ()) !=
+                        seen.getActivePlayer ())
+                {
+                    System.out.println ("torn moves " + moves[i] + " in " +
+                        BoardDiagram.format (seen));
+                    errors.incrementAndGet ();
+                    break;
+                }
+            }
+
+            // An iterator keeps to one snapshot, however the game moves on.
+            int iterated = 0;
+            for (MoveIterator it = model.iterateMoves (); it.hasNext (); )
+            {
+                it.getNext ();
+                ++iterated;
+            }
+            if (iterated > PackedMove.MAX_MOVES)
+            {
+                System.out.println ("iterated " + iterated + " moves");
+                errors.incrementAndGet ();
+            }
+
+            // Each copy is a whole position.
+            GameState gameState = model.copyGameState ();
+            if (gameState.getPieceCount (SOUTH) > 12 ||
+                gameState.getPieceCount (NORTH) > 12 ||
+                gameState.getKingCount (SOUTH) >
+                    gameState.getPieceCount (SOUTH) ||
+                gameState.getKingCount (NORTH) >
+                    gameState.getPieceCount (NORTH))
+            {
+                System.out.println ("torn state " +
+                    BoardDiagram.format (gameState));
+                errors.incrementAndGet ();
+            }
+
+            // Single reads, as the board does when it paints.
+            model.getActivePlayer ();
+            for (int sqIndex = 0; sqIndex < 64; ++sqIndex)
+            {
+                model.getPlayerAt (sqIndex);
+            }
+            ++count;
+        }
+        reads.addAndGet (count);
+    }
+}
@@ -0,0 +1,112 @@
+//
+// PositionSuite.java
+//
+
+package net.ech.checkers;
+
+/**
+ * A fixed suite of positions on which to measure the engine, in
+ * BoardDiagram form.  Change it only deliberately: results are compared
+ * from release to release.
+ */
+public class PositionSuite
+{
+    public final static String[] OPENING =
+    {
+        "nnnn/n.nn/nnnn/..../.ss./s..s/ss.s/ssss:S",
+        "nnnn/nnnn/n..n/n.../s..s/.s.s/s.ss/ssss:S",
+        "nnnn/nn.n/nnn./.nsn/..../ssss/ss.s/ssss:S",
+        "nnnn/nnnn/n..n/.s../n.../.s.s/ssss/ssss:S",
+        "nnnn/nn../nnnn/..n./s.../.s.s/ssss/ssss:S",
+        "nnnn/n.nn/nnn./n.n./.s../ssss/ssss/.sss:S",
+    };
+
+    public final static String[] MIDDLEGAME =
+    {
+        "n.../n.nn/..n./nn../.n.s/s.s./s.../s.ss:S",
+        "nn../.nnn/s..n/.sn./n.n./.sss/ss.s/..ss:S",
+        "n.../nn.n/.nnn/n.sn/s.s./.ss./..s./.sss:S",
+        ".nnn/n..n/.n../n.s./..../ss.s/s.../..ss:S",
+        "n..n/n..n/nn../..../..ns/s..s/s.../s.ss:S",
+        "n.nn/n..s/nn.n/n.../sss./.s../.s.s/.s.s:S",
+    };
+
+    // Double jumps, three-hop chains of men, a five-hop chain of a king,
+    // and a king's four hops around and back to where it started.
+    public final static String[] MULTI_JUMP =
+    {
+        "nn.n/n.nn/.nn./ns../..n./.s.s/ss.s/s.ss:S",
+        "n..n/...n/..n./..../..n./...s/.n.s/s.s.:S",
+        ".n.n/.s../..../.ss./..../sss./..../s..s:N",
+        "n.../...n/.nn./..../.n.n/..../.n.s/S.s.:S",
+        "n.../.ss./.N../.ss./..../..../...s/s...:N",
+        "n.n./n.n./nsnn/..../..s./s..s/.s../ss.s:N",
+    };
+
+    public final static String[] KING_ENDGAME =
+    {
+        ".SS./...s/..../..../..../.N../...s/NN..:N",
+        "..S./.S.S/..../..N./..../..../N.Ns/....:S",
+        "..../..S./...S/..../..../N..s/..../...N:S",
+        "...S/..../...S/..../...s/..../N.../..N.:N",
+        "..../..SS/..../...s/..../..../N.../..N.:S",
+        "..S./...S/..S./..../..../N.../..../..N.:N",
+    };
+
+    public final static String[] CATEGORY_NAMES =
+    {
+        "opening", "middlegame", "multi-jump", "king-endgame"
+    };
+
+    public final static String[][] CATEGORIES =
+    {
+        OPENING, MIDDLEGAME, MULTI_JUMP, KING_ENDGAME
+    };
+
+    // Do not instantiate.
+    private PositionSuite ()
+    {
+    }
+
+    /**
+     * Return the positions of one category, by name.
+     * @throws IllegalArgumentException if there is no such category.
+     */
+    public static GameState[] load (String categoryName)
+    {
+        for (int i = 0; i < CATEGORY_NAMES.length; ++i)
+        {
+            if (CATEGORY_NAMES[i].equals (categoryName))
+            {
+                GameState[] positions = new GameState [CATEGORIES[i].length];
+                for (int j = 0; j < positions.length; ++j)
+                {
+                    positions[j] = BoardDiagram.parse (CATEGORIES[i][j]);
+                }
+                return positions;
+            }
+        }
+        throw new IllegalArgumentException (categoryName);
+    }
+
+    /**
+     * Return all positions of the suite, category by category.
+     */
+    public static GameState[] loadAll ()
+    {
+        int total = 0;
+        for (int i = 0; i < CATEGORIES.length; ++i)
+            total += CATEGORIES[i].length;
+
+        GameState[] positions = new GameState [total];
+        int n = 0;
+        for (int i = 0; i < CATEGORIES.length; ++i)
+        {
+            for (int j = 0; j < CATEGORIES[i].length; ++j)
+            {
+                positions[n++] = BoardDiagram.parse (CATEGORIES[i][j]);
+            }
+        }
+        return positions;
+    }
+}
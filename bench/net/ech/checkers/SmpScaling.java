@@ -0,0 +1,94 @@
+//
+// SmpScaling.java
+//
+
+package net.ech.checkers;
+
+import java.util.concurrent.*;
+
+/**
+ * Measures how lazy SMP search scales with threads: the time to search
+ * every position of the PositionSuite to a fixed level, at 1, 2, 4, 8 and
+ * 16 threads, and the speedup over one thread.
+ *
+ * Usage: SmpScaling [level [threads ...]]
+ */
+public class SmpScaling
+{
+    private final static int DEFAULT_LEVEL = 12;
+    private final static int[] DEFAULT_THREADS = { 1, 2, 4, 8, 16 };
+
+    // Megabytes.
+    private final static int TABLE_SIZE = 64;
+
+    public static void main (String[] args)
+    {
+        int level = args.length > 0 ? Integer.parseInt (args[0]) : DEFAULT_LEVEL;
+        int[] threadCounts = DEFAULT_THREADS;
+        if (args.length > 1)
+        {
+            threadCounts = new int [args.length - 1];
+            for (int i = 1; i < args.length; ++i)
+                threadCounts[i - 1] = Integer.parseInt (args[i]);
+        }
+
+        GameState[] positions = PositionSuite.loadAll ();
+
+        // Warm up the compiler.
+        runSuite (positions, level, 1);
+
+        System.out.println ("level " + level + ", " + positions.length +
+            " positions, " + Runtime.getRuntime ().availableProcessors () +
+            " processors");
+        System.out.println ("threads\tmillis\tnodes\tnodes/sec\tspeedup");
+
+        long baseline = 0;
+        for (int i = 0; i < threadCounts.length; ++i)
+        {
+            long[] result = runSuite (positions, level, threadCounts[i]);
+            long nanos = result[0];
+            long nodes = result[1];
+            if (baseline == 0)
+                baseline = nanos;
+            System.out.println (threadCounts[i] + "\t" +
+                (nanos / 1000000) + "\t" + nodes + "\t" +
+                (long) (nodes * 1e9 / nanos) + "\t" +
+                ((baseline * 100 / nanos) / 100.0));
+        }
+    }
+
+    //
+    // Search each position once, with a fresh table.  Return the total
+    // time in nanoseconds and the total number of nodes.
+    //
+    private static long[] runSuite (
+        GameState[] positions, int level, int threads)
+    {
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool (threads) : null;
+        long nanos = 0;
+        long nodes = 0;
+
+        for (int i = 0; i < positions.length; ++i)
+        {
+            TranspositionTable table = new TranspositionTable (TABLE_SIZE);
+            GameState gameState = new GameState (positions[i]);
+            long start = System.nanoTime ();
+            RootSearch search = new RootSearch (gameState, table, pool, true);
+            search.startHelpers (level + 1);
+            try
+            {
+                search.search (level);
+            }
+            finally
+            {
+                search.stopHelpers ();
+            }
+            nanos += System.nanoTime () - start;
+            nodes += search.getNodes ();
+        }
+
+        if (pool != null)
+            pool.shutdown ();
+        return new long[] { nanos, nodes };
+    }
+}
@@ -0,0 +1,94 @@
+//
+// ExecuteMoveBenchmark.java
+//
+
+package net.ech.checkers;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Executing moves: each operation plays every legal move from every
+ * position of one category of the PositionSuite, on an immutable board,
+ * on a game state, and on a search board with make/unmake.
+ */
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.NANOSECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+@State (Scope.Thread)
+public class ExecuteMoveBenchmark implements Constants
+{
+    @Param ({ "opening", "middlegame", "multi-jump", "king-endgame" })
+    public String category;
+
+    private GameState[] positions;
+    private Move[][] moves;
+    private SearchBoard[] searchBoards;
+    private long[][] packedMoves;
+
+    @Setup
+    public void setUp ()
+    {
+        positions = PositionSuite.load (category);
+        moves = new Move [positions.length][];
+        searchBoards = new SearchBoard [positions.length];
+        packedMoves = new long [positions.length][];
+        for (int i = 0; i < positions.length; ++i)
+        {
+            moves[i] = Rules.findMoves (positions[i]);
+            searchBoards[i] = new SearchBoard (positions[i]);
+            packedMoves[i] = new long [moves[i].length];
+            for (int j = 0; j < moves[i].length; ++j)
+            {
+                packedMoves[i][j] = PackedMove.pack (moves[i][j]);
+            }
+        }
+    }
+
+    @Benchmark
+    public void boardExecuteMove (Blackhole blackhole)
+    {
+        for (int i = 0; i < positions.length; ++i)
+        {
+            BoardState board = positions[i].getBoardState ();
+            for (int j = 0; j < moves[i].length; ++j)
+            {
+                blackhole.consume (board.executeMove (moves[i][j]));
+            }
+        }
+    }
+
+    @Benchmark
+    public void gameExecuteMove (Blackhole blackhole)
+    {
+        for (int i = 0; i < positions.length; ++i)
+        {
+            for (int j = 0; j < moves[i].length; ++j)
+            {
+                GameState gameState = new GameState (positions[i]);
+                gameState.executeMove (moves[i][j]);
+                blackhole.consume (gameState);
+            }
+        }
+    }
+
+    @Benchmark
+    public long makeUnmakeMove ()
+    {
+        long sum = 0;
+        for (int i = 0; i < positions.length; ++i)
+        {
+            SearchBoard board = searchBoards[i];
+            for (int j = 0; j < packedMoves[i].length; ++j)
+            {
+                board.makeMove (packedMoves[i][j]);
+                sum += board.getHashKey ();
+                board.unmakeMove ();
+            }
+        }
+        return sum;
+    }
+}
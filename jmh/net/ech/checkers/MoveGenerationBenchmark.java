@@ -0,0 +1,70 @@
+//
+// MoveGenerationBenchmark.java
+//
+
+package net.ech.checkers;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Move generation over one category of the PositionSuite.  Each operation
+ * covers every position of the category.
+ */
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.NANOSECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+@State (Scope.Thread)
+public class MoveGenerationBenchmark implements Constants
+{
+    @Param ({ "opening", "middlegame", "multi-jump", "king-endgame" })
+    public String category;
+
+    private GameState[] positions;
+    private long[] buffer = new long [PackedMove.MAX_MOVES];
+
+    @Setup
+    public void setUp ()
+    {
+        positions = PositionSuite.load (category);
+    }
+
+    @Benchmark
+    public void findMoves (Blackhole blackhole)
+    {
+        for (int i = 0; i < positions.length; ++i)
+        {
+            blackhole.consume (Rules.findMoves (positions[i]));
+        }
+    }
+
+    @Benchmark
+    public int generateMoves ()
+    {
+        int total = 0;
+        for (int i = 0; i < positions.length; ++i)
+        {
+            total += Rules.generateMoves (positions[i].getBoardState (),
+                positions[i].getActivePlayer (), buffer, 0);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public int canPlay ()
+    {
+        int total = 0;
+        for (int i = 0; i < positions.length; ++i)
+        {
+            BoardState board = positions[i].getBoardState ();
+            if (Rules.canPlay (board, SOUTH))
+                ++total;
+            if (Rules.canPlay (board, NORTH))
+                ++total;
+        }
+        return total;
+    }
+}
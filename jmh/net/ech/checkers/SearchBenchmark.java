@@ -0,0 +1,61 @@
+//
+// SearchBenchmark.java
+//
+
+package net.ech.checkers;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * AutoPlayer's search at fixed levels: each operation chooses a move in
+ * every position of one category of the PositionSuite, single-threaded,
+ * starting with an empty transposition table.
+ */
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 3, time = 2)
+@Measurement (iterations = 5, time = 2)
+@Fork (1)
+@State (Scope.Thread)
+public class SearchBenchmark
+{
+    @Param ({ "opening", "middlegame", "multi-jump", "king-endgame" })
+    public String category;
+
+    @Param ({ "4", "6", "8" })
+    public int level;
+
+    // Megabytes.
+    private final static int TABLE_SIZE = 16;
+
+    private GameState[] positions;
+    private TranspositionTable table;
+
+    @Setup
+    public void setUp ()
+    {
+        positions = PositionSuite.load (category);
+        table = new TranspositionTable (TABLE_SIZE);
+    }
+
+    @Setup (Level.Invocation)
+    public void clearTable ()
+    {
+        table.clear ();
+    }
+
+    @Benchmark
+    public long search ()
+    {
+        long nodes = 0;
+        for (int i = 0; i < positions.length; ++i)
+        {
+            RootSearch search =
+                new RootSearch (positions[i], table, null, false);
+            search.search (level);
+            nodes += search.getNodes ();
+        }
+        return nodes;
+    }
+}
@@ -5,6 +5,7 @@
 package net.ech.checkers;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.io.*;
 
 /**
@@ -13,165 +14,510 @@ import java.io.*;
  */
 public class AutoPlayer implements Constants, Runnable, ModelListener
 {
+    private final static int MAX_LEVEL = 20;
+
+    // Megabytes.
+    private final static int DEFAULT_TABLE_SIZE = 16;
+
     private Model model;
     private int level = 1;
-    private PrintWriter logWriter;
+    private volatile SearchLog searchLog;
+    private boolean ownSearchLog;
+    private long timeBudget;
+    private int tableSize = DEFAULT_TABLE_SIZE;
+    private TranspositionTable table;
+    private ForkJoinPool pool;
+    private boolean lazySmp;
+    private Tablebase tablebase;
+    private Evaluator evaluator = StandardEvaluator.getDefault ();
+    private OpeningBook openingBook;
+    private long nodes;
+    private ExecutorService executor;
+    private boolean talkative = true;
+    private SearchStatsListener statsListener;
+    private MoveStats lastMoveStats;
+
+    // The turn being taken, if any.
+    private Future pendingTurn;
+
+    // Runs the turns of players not given an executor of their own.
+    private static ExecutorService sharedExecutor;
 
     public AutoPlayer (Model model)
     {
         this.model = model;
     }
 
+    /**
+     * Construct a player with no model, to be asked for moves by calling
+     * chooseMove.
+     */
+    public AutoPlayer ()
+    {
+        this (null);
+    }
+
     /**
      * Set the difficulty level, equivalent to the lookahead level.
      */
     public void setLevel (int level)
     {
         if (level < 0) level = 0;
-        if (level > 10) level = 10;
+        if (level > MAX_LEVEL) level = MAX_LEVEL;
         this.level = level;
     }
 
     /**
-     * Enable logging by setting a log output stream.
+     * Set the time allowed to choose a move, in milliseconds.  If nonzero,
+     * look ahead as far as time allows, instead of to the set level.
+     */
+    public void setTimeBudget (long millis)
+    {
+        this.timeBudget = Math.max (millis, 0);
+    }
+
+    /**
+     * Set the size of the transposition table, in megabytes.  Zero
+     * disables the table.  The table is made when first searched.
+     */
+    public void setTableSize (int megabytes)
+    {
+        tableSize = Math.max (megabytes, 0);
+        table = null;
+    }
+
+    /**
+     * Share a transposition table, for example among the players of many
+     * games, rather than have one of my own.  Null disables the table.
+     */
+    public void setTranspositionTable (TranspositionTable table)
+    {
+        this.table = table;
+        tableSize = 0;
+    }
+
+    //
+    // Return the transposition table, making it if it is mine and not yet
+    // made, or null if there is none.
+    //
+    private TranspositionTable getTable ()
+    {
+        if (table == null && tableSize > 0)
+            table = new TranspositionTable (tableSize);
+        return table;
+    }
+
+    /**
+     * Set the number of threads that search at once.  With more than one,
+     * the moves open to me are searched in parallel.
+     */
+    public void setThreads (int threads)
+    {
+        if (pool != null)
+        {
+            pool.shutdown ();
+            pool = null;
+        }
+        if (threads > 1)
+        {
+            pool = new ForkJoinPool (threads);
+        }
+    }
+
+    /**
+     * Choose how multiple threads search (see setThreads).  If true, all
+     * threads search the whole tree, to slightly different depths and in
+     * different orders, sharing results through the transposition table
+     * ("lazy SMP").  If false, the default, the moves open to me are
+     * divided among them.
+     */
+    public void setLazySmp (boolean lazySmp)
+    {
+        this.lazySmp = lazySmp;
+    }
+
+    /**
+     * Set the endgame tables to consult, or null for none.
+     */
+    public void setTablebase (Tablebase tablebase)
+    {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Grade positions with the given evaluator.  Players that share a
+     * transposition table should share an evaluator too, since the table
+     * keeps the grades.
+     */
+    public void setEvaluator (Evaluator evaluator)
+    {
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * Set the opening book to consult before searching, or null for none.
+     */
+    public void setOpeningBook (OpeningBook openingBook)
+    {
+        this.openingBook = openingBook;
+    }
+
+    /**
+     * Say, or do not say, what I am doing on my turn, on standard output.
+     * The default is to say.
      */
-    public void setLogWriter (PrintWriter logWriter)
+    public void setTalkative (boolean talkative)
     {
-        this.logWriter = logWriter;
+        this.talkative = talkative;
+    }
+
+    /**
+     * Tell the given listener how I chose each move, or no one if null.
+     */
+    public void setStatsListener (SearchStatsListener statsListener)
+    {
+        this.statsListener = statsListener;
+    }
+
+    /**
+     * Return how I chose my last move, or null if I have chosen none.
+     */
+    public MoveStats getLastMoveStats ()
+    {
+        return lastMoveStats;
+    }
+
+    /**
+     * Log what I search and choose, or do not log if null.  The log is
+     * the caller's to close.
+     */
+    public synchronized void setSearchLog (SearchLog searchLog)
+    {
+        closeSearchLog ();
+        this.searchLog = searchLog;
+    }
+
+    /**
+     * Enable logging by setting a log output stream, to be written by a
+     * SearchLog of my own, which I close when the stream is replaced or
+     * when I am closed.
+     */
+    public synchronized void setLogWriter (PrintWriter logWriter)
+    {
+        setSearchLog (logWriter == null ? null : new SearchLog (logWriter));
+        ownSearchLog = logWriter != null;
+    }
+
+    /**
+     * Stop taking my turn, if I am, and close the log I write through
+     * setLogWriter, if any.
+     */
+    public synchronized void close ()
+    {
+        cancel ();
+        closeSearchLog ();
+        searchLog = null;
+    }
+
+    //
+    // Close the search log if it is mine, letting its thread finish.
+    //
+    private void closeSearchLog ()
+    {
+        if (ownSearchLog)
+        {
+            ownSearchLog = false;
+            try
+            {
+                searchLog.close ();
+            }
+            catch (IOException e)
+            {
+                // A PrintWriter reports no errors, so there are none.
+            }
+        }
+    }
+
+    /**
+     * Set the executor in which to take my turns, for example one that
+     * runs each task on a virtual thread where the platform has them.  By
+     * default, turns run in a pool shared by all players, with a thread per
+     * processor.
+     */
+    public void setExecutor (ExecutorService executor)
+    {
+        this.executor = executor;
+    }
+
+    private static synchronized ExecutorService getSharedExecutor ()
+    {
+        if (sharedExecutor == null)
+        {
+            sharedExecutor = Executors.newFixedThreadPool (
+                Runtime.getRuntime ().availableProcessors (),
+                new ThreadFactory ()
+                {
+                    public Thread newThread (Runnable runnable)
+                    {
+                        Thread thread = new Thread (runnable, "AutoPlayer");
+                        thread.setDaemon (true);
+                        return thread;
+                    }
+                });
+        }
+        return sharedExecutor;
     }
 
     /**
      * Respond to model change by taking my turn, when it's my turn.
+     * Any turn already under way is moot, and is cancelled.
      */
     public void modelChanged (Model model)
     {
+        cancel ();
+
         // FOR NOW: always play north.
         if (model.getActivePlayer () == NORTH)
         {
-            new Thread (this).start ();
+            takeTurn ();
         }
     }
 
     /**
-     * What I do when it's my turn.
+     * Start choosing a move in the model's current game state, in my
+     * executor; make the move when chosen, unless by then the game has
+     * moved on.  Cancelling the returned future stops the search.
      */
-    public void run ()
+    public synchronized Future takeTurn ()
     {
-        System.out.println ("Hmmm.");
-        Move move = chooseMove ();
-        System.out.println ("I'll move... that one.");
-        model.executeMove (move);
+        cancel ();
+
+        final Turn turn = new Turn (model.copyGameState ());
+        FutureTask task = new FutureTask (turn, null)
+        {
+            public boolean cancel (boolean mayInterruptIfRunning)
+            {
+                turn.cancel ();
+                return super.cancel (mayInterruptIfRunning);
+            }
+        };
+        pendingTurn = task;
+        (executor != null ? executor : getSharedExecutor ()).execute (task);
+        return task;
     }
 
     /**
-     * The logic of choosing a next move automatically begins here.
+     * Stop taking my turn, if I am, without moving.
      */
-    private Move chooseMove ()
+    public synchronized void cancel ()
     {
-        // Ask the Rules to find all possible moves.
-        GameState gameState = model.copyGameState ();
-        Move[] moves = Rules.findMoves (gameState);
-        if (moves.length == 0)
-            return null;        // should not happen.
+        if (pendingTurn != null)
+        {
+            // The search notices soon enough; there is no need to
+            // interrupt the thread.
+            pendingTurn.cancel (false);
+            pendingTurn = null;
+        }
+    }
+
+    /**
+     * What I do when it's my turn: choose a move in the model's current
+     * game state, in the calling thread, and make it.
+     */
+    public void run ()
+    {
+        new Turn (model.copyGameState ()).run ();
+    }
 
-        if (logWriter != null)
+    //
+    // One turn.  Cancelling it aborts its search, whose result, if any, is
+    // then ignored.
+    //
+    private class Turn implements Runnable
+    {
+        private GameState gameState;
+        private boolean cancelled;
+        private RootSearch search;
+
+        Turn (GameState gameState)
         {
-            logWriter.println ();
-            logWriter.println ("Possible moves: " + moves.length);
+            this.gameState = gameState;
         }
 
-        // Evaluate each move, choose the best.
-        Move bestMove = moves[0];
-        if (moves.length > 1)
+        public void run ()
         {
-            int bestScore = scoreMove (gameState, bestMove, 0);
-            if (logWriter != null)
+            if (talkative)
+                System.out.println ("Hmmm.");
+            Move move;
+            try
             {
-                logWriter.println ("1) " + bestMove + " = " + bestScore);
+                move = chooseMove (gameState, this);
             }
-            for (int i = 1; i < moves.length; ++i)
+            catch (SearchAbortedException e)
             {
-                Move thisMove = moves[i];
-                int thisScore = scoreMove (gameState, thisMove, 0);
-                if (logWriter != null)
-                {
-                    logWriter.println ((i + 1) +") " + thisMove + " = " + thisScore);
-                }
-                if (thisScore > bestScore)
-                {
-                    bestScore = thisScore;
-                    bestMove = thisMove;
-                }
+                return;
+            }
+
+            if (move != null && !isCancelled () &&
+                model.executeMove (gameState, move) && talkative)
+            {
+                System.out.println ("I'll move... that one.");
             }
         }
 
-        if (logWriter != null)
+        //
+        // Note the search under way.  Return false if already cancelled.
+        //
+        synchronized boolean setSearch (RootSearch search)
         {
-            logWriter.println ("MOVING " + bestMove);
+            this.search = search;
+            return !cancelled;
         }
 
-        return bestMove;
+        synchronized boolean isCancelled ()
+        {
+            return cancelled;
+        }
+
+        synchronized void cancel ()
+        {
+            cancelled = true;
+            if (search != null)
+                search.abort ();
+        }
     }
 
     /**
-     * Evaluate a move by looking ahead, up to the maximum lookahead depth.
+     * The logic of choosing a next move automatically begins here.
+     * Choose a move for the player to move in the given game state, which
+     * is left unchanged.  Return null if there is no move.  Not to be
+     * called from more than one thread at a time.
      */
-    private int scoreMove (
-        GameState gameState, Move move, int depth)
+    public Move chooseMove (GameState gameState)
     {
-        // Save current game state.
-        int oldActivePlayer = gameState.getActivePlayer ();
-        BoardState oldBoardState = gameState.getBoardState ();
+        return chooseMove (gameState, null);
+    }
 
-        // Postulate the move.
-        gameState.executeMove (move);
+    //
+    // Choose a move, as part of the given turn, if not null.
+    //
+    private Move chooseMove (GameState gameState, Turn turn)
+    {
+        long start = System.nanoTime ();
+        MoveStats stats = new MoveStats ();
+        SearchLog searchLog = this.searchLog;
 
-        int score;
-        if (depth == level ||
-            gameState.getActivePlayer () == NULL_PLAYER)
+        // Play by the book while the book lasts.
+        if (openingBook != null)
         {
-            // Can look ahead no further.  Grade the game as it stands.  
-            score = scoreGame (gameState, oldActivePlayer == SOUTH);
+            Move move = openingBook.getMove (gameState);
+            if (move != null)
+            {
+                if (searchLog != null)
+                    searchLog.logBook (gameState, move);
+                stats.book = true;
+                report (stats, start);
+                return move;
+            }
         }
-        else
+
+        // Ask the Rules to find all possible moves.
+        TranspositionTable table = getTable ();
+        if (table != null)
+            table.newSearch ();
+        RootSearch search =
+            new RootSearch (gameState, table, pool, lazySmp);
+        search.setTablebase (tablebase);
+        search.setEvaluator (evaluator);
+        if (turn != null && !turn.setSearch (search))
+            throw new SearchAbortedException ();
+        int count = search.getMoveCount ();
+        if (count == 0)
+            return null;        // should not happen.
+        stats.moveCount = count;
+
+        if (count > 1)
         {
-            // Look ahead, recursively.
-            score = findBestScore (gameState, depth + 1) * -1;
+            if (timeBudget > 0)
+            {
+                // Look ahead one level further at a time, until time runs
+                // out.  Each level searches the previous best move first.
+                search.setDeadline (
+                    System.nanoTime () + timeBudget * 1000000L);
+                search.startHelpers (MAX_LEVEL);
+                try
+                {
+                    for (int lev = 0; lev <= MAX_LEVEL; ++lev)
+                    {
+                        long levelStart = search.getNodes ();
+                        int bestScore = search.search (lev);
+                        stats.level = lev;
+                        stats.levelNodes = search.getNodes () - levelStart;
+                        if (searchLog != null)
+                            searchLog.logLevel (gameState, search, lev);
+                        if (bestScore >= Searcher.WIN ||
+                            bestScore <= -Searcher.WIN)
+                        {
+                            // The outcome is certain.
+                            break;
+                        }
+                    }
+                }
+                catch (SearchAbortedException e)
+                {
+                    // Go with the last level completed.
+                }
+                finally
+                {
+                    search.stopHelpers ();
+                }
+            }
+            else
+            {
+                search.startHelpers (level + 1);
+                try
+                {
+                    search.search (level);
+                    stats.levelNodes = search.getNodes ();
+                }
+                finally
+                {
+                    search.stopHelpers ();
+                }
+                stats.level = level;
+                if (searchLog != null)
+                    searchLog.logLevel (gameState, search, level);
+            }
         }
 
-        // Restore game state.
-        gameState.setActivePlayer (oldActivePlayer);
-        gameState.setBoardState (oldBoardState);
+        Move move =
+            Rules.toMove (gameState.getBoardState (), search.getMove (0));
+        nodes += search.getNodes ();
+        search.addCounts (stats);
+        report (stats, start);
+        if (searchLog != null)
+            searchLog.logMove (gameState, search, stats, tablebase);
 
-        return score;
+        return move;
+    }
+
+    //
+    // Note how a move was chosen, and tell the listener.
+    //
+    private void report (MoveStats stats, long start)
+    {
+        stats.nanos = System.nanoTime () - start;
+        lastMoveStats = stats;
+        if (statsListener != null)
+            statsListener.moveSearched (this, stats);
     }
 
     /**
-     * Grade the game as it stands.  
-     * If 'asSouth' is true, grade the game from the point of view of the
-     * south player.  Return a number in -1000..1000.
+     * Return the number of moves postulated by all my searches so far.
      */
-    private static int scoreGame (GameState gameState, boolean asSouth)
+    public long getNodes ()
     {
-        int northPieces = gameState.getPieceCount (NORTH);
-        int southPieces = gameState.getPieceCount (SOUTH);
-
-        if (gameState.getActivePlayer () == NULL_PLAYER)
-        {
-            if ((asSouth && southPieces > 0) || (!asSouth && northPieces > 0))
-                return 1000;
-        }
-
-        int scoreAsNorth;
-        if (northPieces == 0)
-            scoreAsNorth = -1000;
-        else if (southPieces == 0)
-            scoreAsNorth = 1000;
-        else
-            scoreAsNorth =
-                northPieces + gameState.getKingCount (NORTH) 
-                - southPieces - gameState.getKingCount (SOUTH);
-        return asSouth ? (scoreAsNorth * -1) : scoreAsNorth;
+        return nodes;
     }
 
     /**
@@ -179,25 +525,10 @@ public class AutoPlayer implements Constants, Runnable, ModelListener
      */
     public int findBestScore (GameState gameState, int depth)
     {
-        Move[] moves = Rules.findMoves (gameState);
-        Move bestMove = null;
-        int bestScore = 0;
-
-        for (int i = 0; i < moves.length; ++i)
-        {
-            Move thisMove = moves[i];
-            int thisScore = scoreMove (gameState, thisMove, depth);
-            if (bestMove == null || thisScore > bestScore)
-            {
-                bestScore = thisScore;
-                bestMove = thisMove;
-            }
-        }
-
-        if (bestMove == null)
-            throw new IllegalStateException ("look for best move of none");
-
-        return bestScore;
+        Searcher searcher = new Searcher (gameState, null);
+        searcher.setLevel (level);
+        searcher.setEvaluator (evaluator);
+        return searcher.findBestScore (
+            depth, -Searcher.INFINITY, Searcher.INFINITY);
     }
 }
-
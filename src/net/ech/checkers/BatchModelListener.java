@@ -0,0 +1,19 @@
+//
+// BatchModelListener.java
+//
+
+package net.ech.checkers;
+
+/**
+ * Interface for notification of model change events in batches, off the
+ * thread that changed the model.  See Model.addModelListener.
+ */
+public interface BatchModelListener extends java.util.EventListener
+{
+    /**
+     * Receive the game states the model has been in, oldest first, since
+     * the last batch, and the number of game states that were dropped
+     * from this batch because the listener fell behind.
+     */
+    public void modelChanged (Model model, GameState[] gameStates, int dropped);
+}
@@ -0,0 +1,176 @@
+//
+// Bitboard.java
+//
+
+package net.ech.checkers;
+
+//
+// Shift-and-mask arithmetic on the 32-bit square masks kept by BoardState.
+//
+// Bit 31 is the leftmost playable square of row 0 (the north edge of the
+// board) and bit 0 is the rightmost playable square of row 7.  Each row
+// owns four consecutive bits, so stepping one row north is a left shift of
+// 3, 4 or 5 bits, depending on the parity of the row and the direction;
+// stepping south is the corresponding right shift.  The masks below keep
+// pieces on the board edges from wrapping around into the next row.
+//
+final class Bitboard implements Constants
+{
+    // Squares in rows 1, 3, 5, 7 (bits 0-3 of each byte).
+    private final static int ODD_ROWS = 0x0f0f0f0f;
+    // Squares in rows 0, 2, 4, 6 (bits 4-7 of each byte).
+    private final static int EVEN_ROWS = 0xf0f0f0f0;
+    // Even-row squares that are not on the west edge.
+    private final static int EVEN_ROWS_NOT_WEST = 0x70707070;
+    // Odd-row squares that are not on the east edge.
+    private final static int ODD_ROWS_NOT_EAST = 0x0e0e0e0e;
+
+    private final static int[] BIT_TO_SQUARE = new int [ON_SQUARES];
+    static
+    {
+        for (int bit = 0; bit < ON_SQUARES; ++bit)
+        {
+            int p = (ON_SQUARES - 1) - bit;
+            BIT_TO_SQUARE[bit] = (p * 2) + ((p >> 2) & 1);
+        }
+    }
+
+    // Do not instantiate.
+    private Bitboard ()
+    {
+    }
+
+    /**
+     * Return the mask of the single bit that represents a square.
+     */
+    static int squareToMask (int sqIndex)
+    {
+        return 1 << ((ON_SQUARES - 1) - (sqIndex >> 1));
+    }
+
+    /**
+     * Return the index of the square represented by a bit number.
+     */
+    static int bitToSquare (int bit)
+    {
+        return BIT_TO_SQUARE[bit];
+    }
+
+    /**
+     * Return the index of the square represented by the lowest set bit
+     * of a mask.
+     */
+    static int lowestSquare (int bits)
+    {
+        return BIT_TO_SQUARE[Integer.numberOfTrailingZeros (bits)];
+    }
+
+    //
+    // One step in each direction, for all pieces in the mask at once.
+    //
+
+    static int northwest (int bits)
+    {
+        return ((bits & ODD_ROWS) << 4) | ((bits & EVEN_ROWS_NOT_WEST) << 5);
+    }
+
+    static int northeast (int bits)
+    {
+        return ((bits & EVEN_ROWS) << 4) | ((bits & ODD_ROWS_NOT_EAST) << 3);
+    }
+
+    static int southwest (int bits)
+    {
+        return ((bits & ODD_ROWS) >>> 4) | ((bits & EVEN_ROWS_NOT_WEST) >>> 3);
+    }
+
+    static int southeast (int bits)
+    {
+        return ((bits & EVEN_ROWS) >>> 4) | ((bits & ODD_ROWS_NOT_EAST) >>> 5);
+    }
+
+    //
+    // The same steps by direction number, for code off the hot path.
+    //
+
+    final static int NORTHWEST = 0;
+    final static int NORTHEAST = 1;
+    final static int SOUTHWEST = 2;
+    final static int SOUTHEAST = 3;
+
+    static int step (int bits, int direction)
+    {
+        switch (direction)
+        {
+        case NORTHWEST:
+            return northwest (bits);
+        case NORTHEAST:
+            return northeast (bits);
+        case SOUTHWEST:
+            return southwest (bits);
+        default:
+            return southeast (bits);
+        }
+    }
+
+    //
+    // Masks of a player's pieces, given the three board masks.
+    //
+
+    static int pieces (int occupied, int south, int player)
+    {
+        return occupied & (player == SOUTH ? south : ~south);
+    }
+
+    static int opponents (int occupied, int south, int player)
+    {
+        return occupied & (player == SOUTH ? ~south : south);
+    }
+
+    //
+    // Pieces of the given player that can move north or south.  Men of
+    // the south player move north, men of the north player move south,
+    // and kings move both ways.
+    //
+
+    static int northMovers (int pieces, int kings, int player)
+    {
+        return player == SOUTH ? pieces : (pieces & kings);
+    }
+
+    static int southMovers (int pieces, int kings, int player)
+    {
+        return player == NORTH ? pieces : (pieces & kings);
+    }
+
+    /**
+     * Return the mask of pieces that can slide to an adjacent empty square.
+     */
+    static int movers (int occupied, int south, int kings, int player)
+    {
+        int pieces = pieces (occupied, south, player);
+        int empty = ~occupied;
+        int up = northMovers (pieces, kings, player);
+        int down = southMovers (pieces, kings, player);
+        return
+            (up & (southeast (empty) | southwest (empty))) |
+            (down & (northeast (empty) | northwest (empty)));
+    }
+
+    /**
+     * Return the mask of pieces that can hop an opposing piece.
+     */
+    static int jumpers (int occupied, int south, int kings, int player)
+    {
+        int pieces = pieces (occupied, south, player);
+        int opps = opponents (occupied, south, player);
+        int empty = ~occupied;
+        int up = northMovers (pieces, kings, player);
+        int down = southMovers (pieces, kings, player);
+        return
+            (up & (southeast (southeast (empty) & opps) |
+                   southwest (southwest (empty) & opps))) |
+            (down & (northeast (northeast (empty) & opps) |
+                     northwest (northwest (empty) & opps)));
+    }
+}
@@ -0,0 +1,104 @@
+//
+// BlockCache.java
+//
+
+package net.ech.checkers;
+
+//
+// A small cache of decompressed blocks of the endgame tables, shared by
+// the compressed slices of one Tablebase.  When full, it drops the block
+// least recently used.  There are few entries, so they are simply scanned,
+// most recently found first.  Synchronized; blocks are decompressed outside
+// the lock, so a block missed by two threads at once may be decompressed
+// twice.
+//
+class BlockCache
+{
+    private long[] keys;
+    private byte[][] blocks;
+    private long[] lastUsed;
+    private int size;
+    private int lastFound;
+    private long clock;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * Construct a cache of at most the given number of blocks.
+     */
+    BlockCache (int capacity)
+    {
+        capacity = Math.max (capacity, 1);
+        keys = new long [capacity];
+        blocks = new byte [capacity][];
+        lastUsed = new long [capacity];
+    }
+
+    /**
+     * Return the block with the given key, or null if it is not cached.
+     */
+    synchronized byte[] get (long key)
+    {
+        if (size > 0 && keys[lastFound] == key)
+        {
+            ++hits;
+            lastUsed[lastFound] = ++clock;
+            return blocks[lastFound];
+        }
+        for (int i = 0; i < size; ++i)
+        {
+            if (keys[i] == key)
+            {
+                ++hits;
+                lastUsed[i] = ++clock;
+                lastFound = i;
+                return blocks[i];
+            }
+        }
+        ++misses;
+        return null;
+    }
+
+    /**
+     * Add a block, making room if need be.
+     */
+    synchronized void put (long key, byte[] block)
+    {
+        for (int i = 0; i < size; ++i)
+        {
+            // Another thread got here first.
+            if (keys[i] == key)
+                return;
+        }
+
+        int slot;
+        if (size < keys.length)
+        {
+            slot = size++;
+        }
+        else
+        {
+            slot = 0;
+            for (int i = 1; i < size; ++i)
+            {
+                if (lastUsed[i] < lastUsed[slot])
+                    slot = i;
+            }
+        }
+        keys[slot] = key;
+        blocks[slot] = block;
+        lastUsed[slot] = ++clock;
+        lastFound = slot;
+    }
+
+    synchronized long getHits ()
+    {
+        return hits;
+    }
+
+    synchronized long getMisses ()
+    {
+        return misses;
+    }
+}
@@ -13,6 +13,9 @@ import java.io.*;
 public class BoardApplet extends java.applet.Applet
     implements Constants
 {
+    private AutoPlayer autoPlayer;
+    private SearchLog searchLog;
+
     public void init ()
     {
         int level = 1;
@@ -24,14 +27,57 @@ public class BoardApplet extends java.applet.Applet
         {
         }
 
-        PrintWriter logWriter = null;
         String logFile = getParameter ("logFile");
         if (logFile != null)
         {
             try
             {
-                logWriter =
-                    new PrintWriter (new FileOutputStream (logFile, true), true);
+                searchLog = new SearchLog (new File (logFile));
+                searchLog.setVariations (
+                    "true".equals (getParameter ("logVariations")));
+            }
+            catch (Exception e)
+            {
+                e.printStackTrace ();
+            }
+        }
+
+        Tablebase tablebase = null;
+        String tablebaseDir = getParameter ("tablebaseDir");
+        if (tablebaseDir != null)
+        {
+            try
+            {
+                tablebase = new Tablebase (new File (tablebaseDir));
+            }
+            catch (Exception e)
+            {
+                e.printStackTrace ();
+            }
+        }
+
+        OpeningBook openingBook = null;
+        String openingBookFile = getParameter ("openingBook");
+        if (openingBookFile != null)
+        {
+            try
+            {
+                openingBook = new OpeningBook (new File (openingBookFile));
+            }
+            catch (Exception e)
+            {
+                e.printStackTrace ();
+            }
+        }
+
+        Evaluator evaluator = null;
+        String evaluatorWeightsFile = getParameter ("evaluatorWeights");
+        if (evaluatorWeightsFile != null)
+        {
+            try
+            {
+                evaluator =
+                    StandardEvaluator.read (new File (evaluatorWeightsFile));
             }
             catch (Exception e)
             {
@@ -40,15 +86,43 @@ public class BoardApplet extends java.applet.Applet
         }
 
         Model model = new Model ();
-        AutoPlayer autoPlayer = new AutoPlayer (model);
+        autoPlayer = new AutoPlayer (model);
         BoardComponent boardComp = new BoardComponent ();
 
         autoPlayer.setLevel (level);
-        autoPlayer.setLogWriter (logWriter);
+        autoPlayer.setSearchLog (searchLog);
+        autoPlayer.setTablebase (tablebase);
+        autoPlayer.setOpeningBook (openingBook);
+        if (evaluator != null)
+            autoPlayer.setEvaluator (evaluator);
         model.addModelListener (autoPlayer);
         boardComp.setModel (model);
 
         setLayout (new GridLayout (1, 1));
         add (boardComp);
     }
+
+    /**
+     * Stop the auto-player, and write out and close its log.
+     */
+    public void destroy ()
+    {
+        if (autoPlayer != null)
+        {
+            autoPlayer.close ();
+            autoPlayer = null;
+        }
+        if (searchLog != null)
+        {
+            try
+            {
+                searchLog.close ();
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace ();
+            }
+            searchLog = null;
+        }
+    }
 }
@@ -87,6 +87,9 @@ public class BoardComponent extends Component
 
         int fullSquareSize = squareSize + gutterSize;
 
+        // Paint the pieces from one snapshot of the game.
+        GameState gameState = model != null ? model.copyGameState () : null;
+
         for (int row = 0; row < SQUARES_ON_SIDE; ++row)
         {
             for (int col = 0; col < SQUARES_ON_SIDE; ++col)
@@ -111,9 +114,9 @@ public class BoardComponent extends Component
                 }
 
                 g.fillRect (x, y, squareSize, squareSize);
-                if (on && model != null)
+                if (on && gameState != null)
                 {
-                    int player = model.getPlayerAt (row, col); 
+                    int player = gameState.getPlayerAt (row, col);
                     if (player != 0)
                     {
                         g.setColor (
@@ -122,7 +125,7 @@ public class BoardComponent extends Component
                         g.fillOval (x + 2, y + 2,
                             squareSize - 4, squareSize - 4);
 
-                        if (model.isKingAt (row, col))
+                        if (gameState.isKingAt (row, col))
                         {
                             g.setColor (Color.white);
                             centerText (g, "K", x, y, squareSize, squareSize);
@@ -0,0 +1,149 @@
+//
+// BoardDiagram.java
+//
+
+package net.ech.checkers;
+
+/**
+ * Converts game states to and from a one-line text diagram, for tools,
+ * benchmarks and position files, and writes moves as text.
+ *
+ * A diagram lists the playable squares row by row from the north edge,
+ * four to a row, rows separated by '/'.  Each square is '.' if empty,
+ * 'n' or 'N' for a north man or king, 's' or 'S' for a south man or king.
+ * A colon and 'N' or 'S' for the player to move follow; if that player
+ * cannot move, the game is parsed as over, as if play had reached it.  The
+ * starting position is
+ *
+ *     nnnn/nnnn/nnnn/..../..../ssss/ssss/ssss:S
+ */
+public class BoardDiagram implements Constants
+{
+    // Do not instantiate.
+    private BoardDiagram ()
+    {
+    }
+
+    /**
+     * Parse a diagram.
+     * @throws IllegalArgumentException if the diagram is malformed.
+     */
+    public static GameState parse (String diagram)
+    {
+        int occupied = 0;
+        int south = 0;
+        int kings = 0;
+        int square = 0;
+        int i = 0;
+
+        for (; i < diagram.length () && diagram.charAt (i) != ':'; ++i)
+        {
+            char c = diagram.charAt (i);
+            if (c == '/' || c == ' ')
+                continue;
+            if (square >= ON_SQUARES)
+                throw new IllegalArgumentException (diagram);
+
+            int mask = 1 << ((ON_SQUARES - 1) - square++);
+            switch (c)
+            {
+            case '.':
+                break;
+            case 'S':
+                kings |= mask;
+                south |= mask;
+                occupied |= mask;
+                break;
+            case 's':
+                south |= mask;
+                occupied |= mask;
+                break;
+            case 'N':
+                kings |= mask;
+                occupied |= mask;
+                break;
+            case 'n':
+                occupied |= mask;
+                break;
+            default:
+                throw new IllegalArgumentException (diagram);
+            }
+        }
+
+        if (square != ON_SQUARES || i + 2 != diagram.length ())
+            throw new IllegalArgumentException (diagram);
+
+        int player;
+        switch (diagram.charAt (i + 1))
+        {
+        case 'S':
+            player = SOUTH;
+            break;
+        case 'N':
+            player = NORTH;
+            break;
+        default:
+            throw new IllegalArgumentException (diagram);
+        }
+
+        BoardState board = new BoardState (occupied, south, kings);
+        if (!board.hasPiece (false) || !board.hasPiece (true) ||
+            !Rules.canPlay (board, player))
+        {
+            player = NULL_PLAYER;
+        }
+
+        GameState gameState = new GameState ();
+        gameState.setBoardState (board);
+        gameState.setActivePlayer (player);
+        return gameState;
+    }
+
+    /**
+     * Draw the diagram of a game state.  A finished game is drawn with
+     * the south player to move.
+     */
+    public static String format (GameState gameState)
+    {
+        BoardState board = gameState.getBoardState ();
+        int occupied = board.getOccupiedBits ();
+        int south = board.getSouthBits ();
+        int kings = board.getKingBits ();
+
+        StringBuffer buf = new StringBuffer ();
+        for (int square = 0; square < ON_SQUARES; ++square)
+        {
+            if (square > 0 && square % 4 == 0)
+                buf.append ('/');
+            int mask = 1 << ((ON_SQUARES - 1) - square);
+            char c;
+            if ((occupied & mask) == 0)
+                c = '.';
+            else if ((south & mask) != 0)
+                c = 's';
+            else
+                c = 'n';
+            if ((kings & mask) != 0)
+                c = Character.toUpperCase (c);
+            buf.append (c);
+        }
+        buf.append (':');
+        buf.append (gameState.getActivePlayer () == NORTH ? 'N' : 'S');
+        return buf.toString ();
+    }
+
+    /**
+     * Write a move as the squares it visits, separated by '-'.
+     */
+    public static String formatMove (Move move)
+    {
+        StringBuffer buf = new StringBuffer ();
+        for (int i = 0; i <= move.getLength (); ++i)
+        {
+            if (i > 0)
+                buf.append ('-');
+            buf.append (move.getVertex (i));
+        }
+        return buf.toString ();
+    }
+}
@@ -13,6 +13,9 @@ public class BoardState implements Constants
     private int southBits;
     private int kingBits;
 
+    // Zobrist key of the pieces on the board, kept up to date as they move.
+    private long hashKey;
+
     public BoardState ()
     {
     }
@@ -22,6 +25,19 @@ public class BoardState implements Constants
         occupiedBits = copyMe.occupiedBits;
         southBits = copyMe.southBits;
         kingBits = copyMe.kingBits;
+        hashKey = copyMe.hashKey;
+    }
+
+    //
+    // Construct a board from raw masks.
+    //
+    BoardState (int occupiedBits, int southBits, int kingBits)
+    {
+        this.occupiedBits = occupiedBits;
+        this.southBits = southBits & occupiedBits;
+        this.kingBits = kingBits & occupiedBits;
+        this.hashKey = Zobrist.boardKey (
+            this.occupiedBits, this.southBits, this.kingBits);
     }
 
     public static BoardState makeNewGame ()
@@ -29,9 +45,38 @@ public class BoardState implements Constants
         BoardState newBoard = new BoardState ();
         newBoard.occupiedBits = 0xfff00fff;
         newBoard.southBits = 0xfff;
+        newBoard.hashKey = Zobrist.boardKey (
+            newBoard.occupiedBits, newBoard.southBits, newBoard.kingBits);
         return newBoard;
     }
 
+    //
+    // Raw access to the board masks, for class Rules.
+    //
+
+    int getOccupiedBits ()
+    {
+        return occupiedBits;
+    }
+
+    int getSouthBits ()
+    {
+        return southBits;
+    }
+
+    int getKingBits ()
+    {
+        return kingBits;
+    }
+
+    /**
+     * Return the Zobrist hash key of the pieces on the board.
+     */
+    public long getHashKey ()
+    {
+        return hashKey;
+    }
+
     public int getPlayerAt (int sqIndex)
     {
         int mask = squareIndexToMask (sqIndex);
@@ -49,7 +94,15 @@ public class BoardState implements Constants
 
     public void kingMe (int sqIndex)
     {
-        kingBits |= squareIndexToMask (sqIndex);
+        int mask = squareIndexToMask (sqIndex);
+        if ((occupiedBits & mask) != 0 && (kingBits & mask) == 0)
+        {
+            int bit = Integer.numberOfTrailingZeros (mask);
+            boolean south = (southBits & mask) != 0;
+            hashKey ^= Zobrist.pieceKey (bit, south, false) ^
+                Zobrist.pieceKey (bit, south, true);
+        }
+        kingBits |= mask;
     }
 
     private static int squareIndexToMask (int sqIndex)
@@ -74,6 +127,8 @@ public class BoardState implements Constants
         boolean kingMoving = (newBoard.kingBits & originMask) != 0;
 
         // Remove the moving piece from its current position.
+        newBoard.hashKey ^= Zobrist.squaresKey (
+            originMask, newBoard.southBits, newBoard.kingBits);
         newBoard.occupiedBits &= ~originMask;
         newBoard.southBits &= ~originMask;
         newBoard.kingBits &= ~originMask;
@@ -90,6 +145,9 @@ public class BoardState implements Constants
                 int hoppedSquare =
                     Position.between (originSquare, targetSquare);
                 int hoppedMask = squareIndexToMask (hoppedSquare);
+                newBoard.hashKey ^= Zobrist.squaresKey (
+                    newBoard.occupiedBits & hoppedMask,
+                    newBoard.southBits, newBoard.kingBits);
                 newBoard.occupiedBits &= ~hoppedMask;
                 newBoard.southBits &= ~hoppedMask;
                 newBoard.kingBits &= ~hoppedMask;
@@ -105,6 +163,8 @@ public class BoardState implements Constants
             newBoard.southBits |= targetMask;
         if (kingMoving)
             newBoard.kingBits |= targetMask;
+        newBoard.hashKey ^= Zobrist.squaresKey (
+            targetMask, newBoard.southBits, newBoard.kingBits);
 
         return newBoard;
     }
@@ -114,19 +174,7 @@ public class BoardState implements Constants
         int bits = occupiedBits;
         bits &= south ? southBits : ~southBits;
         bits &= king ? kingBits : ~0;
-        return bitCount (bits);
-    }
-
-    private static int bitCount (int bits)
-    {
-        int[] nibbleBits = { 0, 1, 1, 2, 1, 2, 2, 3, 1, 2, 2, 3, 2, 3, 3, 4 };
-        int sum = 0;
-        while (bits != 0)
-        {
-            sum += nibbleBits[bits & 0xf];
-            bits >>>= 4;
-        }
-        return sum;
+        return Integer.bitCount (bits);
     }
 
     public boolean hasPiece (boolean south)
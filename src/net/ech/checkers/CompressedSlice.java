@@ -0,0 +1,194 @@
+//
+// CompressedSlice.java
+//
+
+package net.ech.checkers;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.zip.*;
+
+//
+// A slice of the endgame tables stored in separately deflated blocks, and
+// mapped into memory.  Blocks are inflated as positions in them are looked
+// up, straight from the mapping, and kept in a BlockCache.
+//
+// The file begins with a header of big-endian numbers:
+//
+//     int   MAGIC
+//     int   positions per block, a power of two
+//     long  positions in the slice
+//     int   number of blocks, n
+//     long  offset of each block from the start of the file, n + 1 of them,
+//           the last being the length of the file
+//
+// followed by the blocks, each in the zlib format of java.util.zip.
+//
+class CompressedSlice implements TablebaseSlice
+{
+    final static int MAGIC = 0x43544231;        // "CTB1"
+    final static int HEADER_SIZE = 20;
+
+    private ByteBuffer buffer;
+    private int key;
+    private int blockShift;
+    private int blockMask;
+    private int blockCount;
+    private BlockCache cache;
+
+    CompressedSlice (File file, int key, BlockCache cache)
+        throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile (file, "r");
+        try
+        {
+            FileChannel channel = raf.getChannel ();
+            buffer = channel.map (
+                FileChannel.MapMode.READ_ONLY, 0, channel.size ());
+        }
+        finally
+        {
+            raf.close ();
+        }
+
+        int blockSize = buffer.getInt (4);
+        blockCount = buffer.getInt (16);
+        if (buffer.getInt (0) != MAGIC ||
+            Integer.bitCount (blockSize) != 1 ||
+            buffer.getLong (8) != TablebaseIndex.getSliceSize (key) ||
+            getOffset (blockCount) != buffer.capacity ())
+        {
+            throw new IOException (file + ": not a compressed slice");
+        }
+
+        this.key = key;
+        this.blockShift = Integer.numberOfTrailingZeros (blockSize);
+        this.blockMask = blockSize - 1;
+        this.cache = cache;
+    }
+
+    public int get (int index)
+    {
+        int block = index >>> blockShift;
+        long cacheKey = (long) key << 32 | block;
+        byte[] values = cache.get (cacheKey);
+        if (values == null)
+        {
+            values = inflate (block);
+            cache.put (cacheKey, values);
+        }
+        return values[index & blockMask];
+    }
+
+    private long getOffset (int block)
+    {
+        return buffer.getLong (HEADER_SIZE + block * 8);
+    }
+
+    //
+    // Decompress a block, reading from the mapping without copying.
+    //
+    private byte[] inflate (int block)
+    {
+        ByteBuffer input = buffer.duplicate ();
+        input.limit ((int) getOffset (block + 1));
+        input.position ((int) getOffset (block));
+
+        byte[] values = new byte [blockMask + 1];
+        Inflater inflater = new Inflater ();
+        try
+        {
+            inflater.setInput (input);
+            int length = 0;
+            while (length < values.length && !inflater.finished ())
+            {
+                int n = inflater.inflate (
+                    values, length, values.length - length);
+                if (n == 0 && (inflater.needsInput () ||
+                    inflater.needsDictionary ()))
+                {
+                    break;
+                }
+                length += n;
+            }
+            return values;
+        }
+        catch (DataFormatException e)
+        {
+            throw new IllegalStateException (
+                Tablebase.getFileName (key) + ": bad block " + block);
+        }
+        finally
+        {
+            inflater.end ();
+        }
+    }
+
+    /**
+     * Compress a plain slice file into a compressed one.
+     */
+    static void compress (File plainFile, File file, int blockSize)
+        throws IOException
+    {
+        byte[] values = new byte [(int) plainFile.length ()];
+        DataInputStream in =
+            new DataInputStream (new FileInputStream (plainFile));
+        try
+        {
+            in.readFully (values);
+        }
+        finally
+        {
+            in.close ();
+        }
+
+        int blockCount = (values.length + blockSize - 1) / blockSize;
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream ();
+        long[] offsets = new long [blockCount + 1];
+        long headerSize = HEADER_SIZE + 8L * (blockCount + 1);
+        byte[] out = new byte [blockSize + 64];
+        Deflater deflater = new Deflater (Deflater.BEST_COMPRESSION);
+        try
+        {
+            for (int block = 0; block < blockCount; ++block)
+            {
+                offsets[block] = headerSize + blocks.size ();
+                int start = block * blockSize;
+                deflater.reset ();
+                deflater.setInput (values, start,
+                    Math.min (blockSize, values.length - start));
+                deflater.finish ();
+                while (!deflater.finished ())
+                {
+                    int n = deflater.deflate (out);
+                    blocks.write (out, 0, n);
+                }
+            }
+            offsets[blockCount] = headerSize + blocks.size ();
+        }
+        finally
+        {
+            deflater.end ();
+        }
+
+        DataOutputStream dout = new DataOutputStream (
+            new BufferedOutputStream (new FileOutputStream (file)));
+        try
+        {
+            dout.writeInt (MAGIC);
+            dout.writeInt (blockSize);
+            dout.writeLong (values.length);
+            dout.writeInt (blockCount);
+            for (int i = 0; i <= blockCount; ++i)
+            {
+                dout.writeLong (offsets[i]);
+            }
+            blocks.writeTo (dout);
+        }
+        finally
+        {
+            dout.close ();
+        }
+    }
+}
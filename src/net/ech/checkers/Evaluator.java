@@ -0,0 +1,44 @@
+//
+// Evaluator.java
+//
+
+package net.ech.checkers;
+
+/**
+ * Grades a position at the leaves of the lookahead.
+ *
+ * The grade is in two parts.  The first is the sum, over the pieces on the
+ * board, of a value that depends only on the kind of piece and its square;
+ * the search keeps that sum up to date as it makes and takes back moves,
+ * rather than adding it up afresh at each leaf.  The second is whatever
+ * else the evaluator reckons from the whole board, added at each leaf.
+ * Grades are from the south player's point of view, in units in which a
+ * position is worth less than Searcher.TABLEBASE_WIN less the longest
+ * distance to a win in the endgame tables, so that no grade is mistaken
+ * for a known win.
+ */
+public interface Evaluator
+{
+    /**
+     * Kinds of piece, as given to getPieceValue.
+     */
+    public final static int SOUTH_MAN = 0;
+    public final static int SOUTH_KING = 1;
+    public final static int NORTH_MAN = 2;
+    public final static int NORTH_KING = 3;
+    public final static int PIECE_KINDS = 4;
+
+    /**
+     * Return the value, to the south player, of a piece of the given kind
+     * on the square of the given bit (see Bitboard).  Values of north
+     * pieces are generally negative.
+     */
+    public int getPieceValue (int kind, int bit);
+
+    /**
+     * Grade a position, given as board masks and the player to move, and
+     * the sum of the values of its pieces.
+     */
+    public int evaluate (int occupied, int south, int kings, int player,
+        int pieceSum);
+}
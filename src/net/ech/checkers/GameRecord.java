@@ -0,0 +1,219 @@
+//
+// GameRecord.java
+//
+
+package net.ech.checkers;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * The moves of one game, played from the starting position, and how the
+ * game ended.  Written and read by GameRecordWriter and GameRecordReader.
+ *
+ * A move is stored as the square it starts from and the direction of each
+ * step it takes, two bits a step, with no board needed to decode it.  The
+ * first byte holds the origin, among the 32 playable squares, in its low
+ * five bits, the direction of the first step in the next two, and whether
+ * the move is a hop in the top bit.  A slide takes that one byte.  A hop
+ * takes a second byte, holding the number of further hops in its low four
+ * bits and the directions of the next two in its high four, and one more
+ * byte for each four hops beyond those.
+ */
+public class GameRecord implements Constants
+{
+    /**
+     * How a game ended: not at all (it was abandoned or cut short), in a
+     * win for one side, or in a draw.
+     */
+    public final static int UNFINISHED = 0;
+    public final static int SOUTH_WON = 1;
+    public final static int NORTH_WON = 2;
+    public final static int DRAWN = 3;
+
+    private final static int HOP_FLAG = 0x80;
+
+    private List moves = new ArrayList ();
+    private int result = UNFINISHED;
+
+    public GameRecord ()
+    {
+    }
+
+    public void addMove (Move move)
+    {
+        moves.add (move);
+    }
+
+    public int getMoveCount ()
+    {
+        return moves.size ();
+    }
+
+    public Move getMove (int index)
+    {
+        return (Move) moves.get (index);
+    }
+
+    public int getResult ()
+    {
+        return result;
+    }
+
+    public void setResult (int result)
+    {
+        this.result = result;
+    }
+
+    /**
+     * Return the result of a game that has ended in the given state, the
+     * last move having been made by the given player.
+     */
+    public static int resultOf (GameState gameState, int lastPlayer)
+    {
+        if (gameState.getActivePlayer () != NULL_PLAYER)
+            return UNFINISHED;
+        return lastPlayer == SOUTH ? SOUTH_WON : NORTH_WON;
+    }
+
+    /**
+     * Play the game through from the start.  Return the game state before
+     * each move, followed by the game state after the last.
+     */
+    public GameState[] replay ()
+    {
+        GameState[] gameStates = new GameState [moves.size () + 1];
+        GameState gameState = new GameState ();
+        gameState.restart ();
+        gameStates[0] = new GameState (gameState);
+        for (int i = 0; i < moves.size (); ++i)
+        {
+            gameState.executeMove (getMove (i));
+            gameStates[i + 1] = new GameState (gameState);
+        }
+        return gameStates;
+    }
+
+    //
+    // Write the moves, without the result.
+    //
+    void writeMoves (ByteArrayOutputStream out)
+    {
+        for (int i = 0; i < moves.size (); ++i)
+        {
+            writeMove (getMove (i), out);
+        }
+    }
+
+    private static void writeMove (Move move, ByteArrayOutputStream out)
+    {
+        int length = move.getLength ();
+        int first = toOnSquare (move.getOrigin ()) |
+            direction (move, 0) << 5 |
+            (move.isHop () ? HOP_FLAG : 0);
+        out.write (first);
+        if (!move.isHop ())
+            return;
+
+        // The rest of the hops, four to a byte after the count.
+        int bits = length - 1;
+        int shift = 4;
+        for (int i = 1; i < length; ++i)
+        {
+            if (shift == 8)
+            {
+                out.write (bits);
+                bits = 0;
+                shift = 0;
+            }
+            bits |= direction (move, i) << shift;
+            shift += 2;
+        }
+        out.write (bits);
+    }
+
+    //
+    // Read the given number of moves.
+    //
+    void readMoves (DataInput in, int count)
+        throws IOException
+    {
+        for (int i = 0; i < count; ++i)
+        {
+            moves.add (readMove (in));
+        }
+    }
+
+    private static Move readMove (DataInput in)
+        throws IOException
+    {
+        int first = in.readUnsignedByte ();
+        int origin = fromOnSquare (first & 0x1f);
+        int code = first >> 5 & 3;
+        if ((first & HOP_FLAG) == 0)
+            return new Move (origin, step (origin, code, 1));
+
+        Hop hop = new Hop (origin, step (origin, code, 2));
+        int bits = in.readUnsignedByte ();
+        int more = bits & 0xf;
+        int shift = 4;
+        int square = hop.getVertex (1);
+        for (int i = 0; i < more; ++i)
+        {
+            if (shift == 8)
+            {
+                bits = in.readUnsignedByte ();
+                shift = 0;
+            }
+            square = step (square, bits >> shift & 3, 2);
+            hop = hop.extend (square);
+            shift += 2;
+        }
+        return hop;
+    }
+
+    //
+    // Return the two-bit code of the direction of step 'index' of a move:
+    // north-west, north-east, south-west or south-east, in that order.
+    //
+    private static int direction (Move move, int index)
+    {
+        int from = move.getVertex (index);
+        int to = move.getVertex (index + 1);
+        boolean south =
+            Position.squareIndexToRow (to) > Position.squareIndexToRow (from);
+        boolean east = Position.squareIndexToColumn (to) >
+            Position.squareIndexToColumn (from);
+        return (south ? 2 : 0) | (east ? 1 : 0);
+    }
+
+    //
+    // Playable squares are numbered 0 to 31, four to a row.
+    //
+    private static int toOnSquare (int sqIndex)
+    {
+        return sqIndex / 2;
+    }
+
+    private static int fromOnSquare (int onSquare)
+    {
+        int row = onSquare / 4;
+        return Position.toSquareIndex (row, 2 * (onSquare % 4) + (row & 1));
+    }
+
+    //
+    // Return the square the given distance from another, in the direction
+    // of the given code.
+    //
+    private static int step (int sqIndex, int code, int distance)
+        throws IOException
+    {
+        int row = Position.squareIndexToRow (sqIndex) +
+            ((code & 2) != 0 ? distance : -distance);
+        int column = Position.squareIndexToColumn (sqIndex) +
+            ((code & 1) != 0 ? distance : -distance);
+        if (!GameState.validSquare (row, column))
+            throw new IOException ("move off the board");
+        return Position.toSquareIndex (row, column);
+    }
+}
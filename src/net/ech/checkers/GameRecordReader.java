@@ -0,0 +1,143 @@
+//
+// GameRecordReader.java
+//
+
+package net.ech.checkers;
+
+import java.io.*;
+
+/**
+ * Reads GameRecords, one game at a time, from a stream or file written by
+ * GameRecordWriter, so that a file of any number of games may be read in
+ * little memory.  A game cut short at the end of the file, as by a crash
+ * while it was being written, is taken for the end of the file.
+ *
+ * Usage: GameRecordReader file ...
+ *
+ * Run by itself, it prints the number of games in each file, the number
+ * of moves, and how the games ended.
+ */
+public class GameRecordReader
+{
+    private DataInputStream in;
+
+    public static void main (String[] args)
+        throws IOException
+    {
+        if (args.length == 0)
+        {
+            System.err.println ("usage: GameRecordReader file ...");
+            System.exit (1);
+        }
+
+        for (int i = 0; i < args.length; ++i)
+        {
+            long games = 0;
+            long moves = 0;
+            long[] results = new long [4];
+            GameRecordReader reader = new GameRecordReader (new File (args[i]));
+            try
+            {
+                GameRecord record;
+                while ((record = reader.read ()) != null)
+                {
+                    ++games;
+                    moves += record.getMoveCount ();
+                    ++results[record.getResult ()];
+                }
+            }
+            finally
+            {
+                reader.close ();
+            }
+            System.out.println (args[i] + ": " + games + " games, " +
+                moves + " moves; SOUTH won " + results[GameRecord.SOUTH_WON] +
+                ", NORTH won " + results[GameRecord.NORTH_WON] + ", drawn " +
+                results[GameRecord.DRAWN] + ", unfinished " +
+                results[GameRecord.UNFINISHED]);
+        }
+    }
+
+    public GameRecordReader (File file)
+        throws IOException
+    {
+        this (new FileInputStream (file));
+    }
+
+    public GameRecordReader (InputStream in)
+        throws IOException
+    {
+        this.in = new DataInputStream (new BufferedInputStream (in));
+        if (this.in.readInt () != GameRecordWriter.MAGIC)
+            throw new IOException ("not a game record stream");
+    }
+
+    /**
+     * Read the next game.  Return null at the end of the stream.
+     */
+    public GameRecord read ()
+        throws IOException
+    {
+        int length;
+        try
+        {
+            length = readVarint (in, true);
+        }
+        catch (EOFException e)
+        {
+            return null;
+        }
+        if (length < 0)
+            return null;
+
+        byte[] bytes = new byte [length];
+        try
+        {
+            in.readFully (bytes);
+        }
+        catch (EOFException e)
+        {
+            return null;
+        }
+
+        DataInputStream data =
+            new DataInputStream (new ByteArrayInputStream (bytes));
+        GameRecord record = new GameRecord ();
+        int result = data.readUnsignedByte ();
+        if (result > GameRecord.DRAWN)
+            throw new IOException ("bad game result " + result);
+        record.setResult (result);
+        record.readMoves (data, readVarint (data, false));
+        return record;
+    }
+
+    public void close ()
+        throws IOException
+    {
+        in.close ();
+    }
+
+    //
+    // Read an unsigned varint.  Return -1 if the stream ends before it
+    // begins and that is allowed.
+    //
+    private static int readVarint (DataInputStream in, boolean endAllowed)
+        throws IOException
+    {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7)
+        {
+            int b = in.read ();
+            if (b < 0)
+            {
+                if (shift == 0 && endAllowed)
+                    return -1;
+                throw new EOFException ();
+            }
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException ("bad varint");
+    }
+}
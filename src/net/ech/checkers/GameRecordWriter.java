@@ -0,0 +1,124 @@
+//
+// GameRecordWriter.java
+//
+
+package net.ech.checkers;
+
+import java.io.*;
+
+/**
+ * Writes GameRecords to a stream, or appends them to a file, one game at
+ * a time, for GameRecordReader to read back.
+ *
+ * A game record file is MAGIC, as a big-endian int, followed by the games.
+ * Each game is the length of the rest of its record in bytes, the result,
+ * as one byte, the number of moves, and the moves, encoded as described in
+ * GameRecord.  Lengths and counts are unsigned varints: seven bits a byte,
+ * low bits first, the top bit set on all bytes but the last.  Each game is
+ * written whole, so that a file cut short by a crash loses at most the
+ * game being written, though games appended after the cut are then lost
+ * to GameRecordReader as well.
+ */
+public class GameRecordWriter
+{
+    final static int MAGIC = 0x43475231;        // "CGR1"
+
+    private OutputStream out;
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream ();
+    private long count;
+
+    /**
+     * Append to a game record file, starting it if it is new or empty.
+     */
+    public GameRecordWriter (File file)
+        throws IOException
+    {
+        boolean empty = !file.exists () || file.length () == 0;
+        if (!empty)
+            checkMagic (file);
+        out = new BufferedOutputStream (new FileOutputStream (file, true));
+        if (empty)
+            writeMagic ();
+    }
+
+    /**
+     * Write a new game record stream.
+     */
+    public GameRecordWriter (OutputStream out)
+        throws IOException
+    {
+        this.out = out;
+        writeMagic ();
+    }
+
+    private void writeMagic ()
+        throws IOException
+    {
+        DataOutputStream data = new DataOutputStream (out);
+        data.writeInt (MAGIC);
+        data.flush ();
+    }
+
+    private static void checkMagic (File file)
+        throws IOException
+    {
+        DataInputStream in = new DataInputStream (new FileInputStream (file));
+        try
+        {
+            if (in.readInt () != MAGIC)
+                throw new IOException (file + ": not a game record file");
+        }
+        finally
+        {
+            in.close ();
+        }
+    }
+
+    /**
+     * Write a game.
+     */
+    public synchronized void write (GameRecord record)
+        throws IOException
+    {
+        buffer.reset ();
+        buffer.write (record.getResult ());
+        writeVarint (buffer, record.getMoveCount ());
+        record.writeMoves (buffer);
+
+        ByteArrayOutputStream length = new ByteArrayOutputStream (5);
+        writeVarint (length, buffer.size ());
+        length.writeTo (out);
+        buffer.writeTo (out);
+        ++count;
+    }
+
+    /**
+     * Return the number of games written.
+     */
+    public synchronized long getCount ()
+    {
+        return count;
+    }
+
+    public synchronized void flush ()
+        throws IOException
+    {
+        out.flush ();
+    }
+
+    public synchronized void close ()
+        throws IOException
+    {
+        out.close ();
+    }
+
+    private static void writeVarint (ByteArrayOutputStream out, int value)
+    {
+        while ((value & ~0x7f) != 0)
+        {
+            out.write ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write (value);
+    }
+}
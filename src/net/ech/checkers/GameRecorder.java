@@ -0,0 +1,155 @@
+//
+// GameRecorder.java
+//
+
+package net.ech.checkers;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+/**
+ * Records the games played in a Model with a GameRecordWriter.  Listens to
+ * the model in a thread of its own, shared by all recorders, and works out
+ * each move from the game states before and after it, so that recording
+ * costs the game nothing: neither the game nor the model's other
+ * listeners ever wait on the disk.
+ *
+ * A game is recorded from the starting position until it ends, or until
+ * the model is restarted or changed otherwise than by a move, whereupon
+ * it is recorded as unfinished.  If the recorder falls so far behind that
+ * states are dropped, the game in progress is not recorded.  Where two
+ * hops lead to the same position, as a king's hop around a loop may go
+ * either way round, either may be recorded.
+ */
+public class GameRecorder implements BatchModelListener, Constants
+{
+    // Game states queued for the recorder; when full, the oldest are
+    // dropped.
+    private final static int CAPACITY = 1024;
+
+    private final static long START_KEY;
+    static
+    {
+        GameState start = new GameState ();
+        start.restart ();
+        START_KEY = start.getHashKey ();
+    }
+
+    // Runs the recorders added by record().
+    private static ExecutorService executor;
+
+    private GameRecordWriter writer;
+    private GameState previous;
+    private GameRecord record;
+
+    public GameRecorder (GameRecordWriter writer)
+    {
+        this.writer = writer;
+    }
+
+    /**
+     * Record the games of a model, in the recorders' thread.
+     */
+    public static GameRecorder record (Model model, GameRecordWriter writer)
+    {
+        GameRecorder recorder = new GameRecorder (writer);
+        model.addModelListener (recorder, getExecutor (), CAPACITY,
+            Model.DROP_OLDEST);
+        return recorder;
+    }
+
+    private static synchronized ExecutorService getExecutor ()
+    {
+        if (executor == null)
+        {
+            executor = Executors.newSingleThreadExecutor (
+                new ThreadFactory ()
+                {
+                    public Thread newThread (Runnable runnable)
+                    {
+                        Thread thread = new Thread (runnable, "game-recorder");
+                        thread.setDaemon (true);
+                        return thread;
+                    }
+                });
+        }
+        return executor;
+    }
+
+    public synchronized void modelChanged (
+        Model model, GameState[] gameStates, int dropped)
+    {
+        if (dropped > 0)
+        {
+            previous = null;
+            record = null;
+        }
+
+        for (int i = 0; i < gameStates.length; ++i)
+        {
+            GameState gameState = gameStates[i];
+            Move move = record == null ? null : findMove (previous, gameState);
+            if (move != null)
+            {
+                record.addMove (move);
+                if (gameState.getActivePlayer () == NULL_PLAYER)
+                {
+                    record.setResult (GameRecord.resultOf (
+                        gameState, previous.getActivePlayer ()));
+                    write ();
+                }
+            }
+            else
+            {
+                write ();
+                if (gameState.getActivePlayer () == SOUTH &&
+                    gameState.getHashKey () == START_KEY)
+                {
+                    record = new GameRecord ();
+                }
+            }
+            previous = gameState;
+        }
+    }
+
+    //
+    // Return the move that leads from one state to the next, or null if
+    // none does.
+    //
+    private static Move findMove (GameState from, GameState to)
+    {
+        if (from.getActivePlayer () == NULL_PLAYER)
+            return null;
+        Move[] moves = Rules.findMoves (from);
+        for (int i = 0; i < moves.length; ++i)
+        {
+            GameState next = new GameState (from);
+            next.executeMove (moves[i]);
+            if (next.getHashKey () == to.getHashKey () &&
+                next.getActivePlayer () == to.getActivePlayer ())
+            {
+                return moves[i];
+            }
+        }
+        return null;
+    }
+
+    //
+    // Write the game in progress, if it has any moves, and forget it.
+    //
+    private void write ()
+    {
+        if (record != null && record.getMoveCount () > 0)
+        {
+            try
+            {
+                writer.write (record);
+            }
+            catch (IOException e)
+            {
+                System.err.println ("Cannot record game: " + e);
+            }
+        }
+        record = null;
+    }
+}
@@ -0,0 +1,520 @@
+//
+// GameServer.java
+//
+
+package net.ech.checkers;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import javax.management.*;
+
+/**
+ * Hosts many games at once, each a Model with an AutoPlayer playing NORTH,
+ * for clients that play SOUTH over a socket on the loopback interface.
+ *
+ * Usage: GameServer [-port n] [-workers n] [-level n] [-time ms] [-table mb]
+ *                   [-record file] [-weights file]
+ *
+ * The auto-players of all games share one pool of search workers (one per
+ * processor by default) and one transposition table.  Turns wait for a
+ * worker in the order in which they were taken, and each game has at most
+ * one turn waiting, so that no game is starved.  Unless a level is given,
+ * each turn is limited to a time budget (100 ms by default), so that no
+ * game holds a worker for long.  Commands for one game run in the order
+ * received, whatever the connection they come from.  Given a file, the
+ * server appends every game played to it, as a game record file.  Given a
+ * weights file, the auto-players grade positions with those weights.
+ *
+ * The server keeps SearchStats of the auto-player's moves in each game and
+ * in all games together, and registers them as MBeans, named "aggregate"
+ * and "game-" and the game id, for JMX consoles.
+ *
+ * The protocol is one command per line, each answered by one line that
+ * begins "OK" or "ERROR".  A move is written as the squares it visits,
+ * separated by '-', for example "42-33" or "51-37-19"; squares are
+ * numbered from 0 at the north-west corner, row by row.  The commands are:
+ *
+ *     NEW                 start a game; answers "OK id"
+ *     MOVE id move        make a move for SOUTH
+ *     BOARD id            answers "OK diagram", in BoardDiagram's format,
+ *                         "OVER" in place of the player to move once the
+ *                         game is over
+ *     MOVES id            answers "OK" and the legal moves
+ *     CLOSE id            end a game
+ *     GAMES               answers "OK" and the number of games
+ *     STATS [id]          answers "OK" and the search statistics of a
+ *                         game, or of all games
+ *     QUIT                close the connection
+ */
+public class GameServer implements Constants
+{
+    private final static int DEFAULT_PORT = 4040;
+    private final static long DEFAULT_TIME_BUDGET = 100;
+
+    // Megabytes.
+    private final static int DEFAULT_TABLE_SIZE = 256;
+
+    private Map sessions = new ConcurrentHashMap ();
+    private AtomicLong nextId = new AtomicLong (1);
+    private ExecutorService searchWorkers;
+    private ExecutorService commandExecutor;
+    private ExecutorService connections;
+    private TranspositionTable table;
+    private int level = -1;
+    private long timeBudget = DEFAULT_TIME_BUDGET;
+    private ServerSocket serverSocket;
+    private GameRecordWriter recordWriter;
+    private Evaluator evaluator = StandardEvaluator.getDefault ();
+    private SearchStats stats = new SearchStats ();
+    private boolean jmx;
+
+    public static void main (String[] args)
+        throws IOException
+    {
+        int port = DEFAULT_PORT;
+        int workers = Runtime.getRuntime ().availableProcessors ();
+        int level = -1;
+        long timeBudget = DEFAULT_TIME_BUDGET;
+        int tableSize = DEFAULT_TABLE_SIZE;
+        File recordFile = null;
+        Evaluator evaluator = null;
+
+        for (int i = 0; i < args.length; ++i)
+        {
+            if (i + 1 == args.length)
+                usage ();
+            String option = args[i];
+            String value = args[++i];
+            if (option.equals ("-port"))
+                port = Integer.parseInt (value);
+            else if (option.equals ("-workers"))
+                workers = Integer.parseInt (value);
+            else if (option.equals ("-level"))
+                level = Integer.parseInt (value);
+            else if (option.equals ("-time"))
+                timeBudget = Long.parseLong (value);
+            else if (option.equals ("-table"))
+                tableSize = Integer.parseInt (value);
+            else if (option.equals ("-record"))
+                recordFile = new File (value);
+            else if (option.equals ("-weights"))
+                evaluator = StandardEvaluator.read (new File (value));
+            else
+                usage ();
+        }
+
+        GameServer server = new GameServer (workers, tableSize);
+        if (level >= 0)
+            server.setLevel (level);
+        else
+            server.setTimeBudget (timeBudget);
+        if (recordFile != null)
+            server.setRecordWriter (new GameRecordWriter (recordFile));
+        if (evaluator != null)
+            server.setEvaluator (evaluator);
+        server.setJmx (true);
+        System.out.println ("Listening on port " + server.listen (port));
+    }
+
+    private static void usage ()
+    {
+        System.err.println ("usage: GameServer [-port n] [-workers n] " +
+            "[-level n] [-time ms] [-table mb] [-record file] " +
+            "[-weights file]");
+        System.exit (1);
+    }
+
+    /**
+     * Construct a server with the given number of search workers and
+     * transposition table size in megabytes.
+     */
+    public GameServer (int workers, int tableSize)
+    {
+        this.searchWorkers = Executors.newFixedThreadPool (
+            Math.max (workers, 1), new DaemonThreadFactory ("search"));
+        this.commandExecutor =
+            Executors.newCachedThreadPool (new DaemonThreadFactory ("command"));
+        this.connections =
+            Executors.newCachedThreadPool (new DaemonThreadFactory ("client"));
+        this.table = new TranspositionTable (tableSize);
+    }
+
+    /**
+     * Have the auto-players of new games search to the given level.
+     */
+    public void setLevel (int level)
+    {
+        this.level = level;
+    }
+
+    /**
+     * Have the auto-players of new games search for the given number of
+     * milliseconds per move.
+     */
+    public void setTimeBudget (long timeBudget)
+    {
+        this.level = -1;
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * Record the games started from now on with the given writer, or not
+     * at all if null.
+     */
+    public void setRecordWriter (GameRecordWriter recordWriter)
+    {
+        this.recordWriter = recordWriter;
+    }
+
+    /**
+     * Have the auto-players of new games grade positions with the given
+     * evaluator.
+     */
+    public void setEvaluator (Evaluator evaluator)
+    {
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * Register the search statistics of all games, and of each game while
+     * it lasts, as MBeans, or not.
+     */
+    public void setJmx (boolean jmx)
+    {
+        if (jmx != this.jmx)
+        {
+            this.jmx = jmx;
+            if (jmx)
+                register (stats, "aggregate");
+            else
+                unregister (stats);
+        }
+    }
+
+    private static void register (SearchStats stats, String name)
+    {
+        try
+        {
+            stats.register (name);
+        }
+        catch (JMException e)
+        {
+            System.err.println ("Cannot register " + name + ": " + e);
+        }
+    }
+
+    private static void unregister (SearchStats stats)
+    {
+        try
+        {
+            stats.unregister ();
+        }
+        catch (JMException e)
+        {
+            System.err.println ("Cannot unregister stats: " + e);
+        }
+    }
+
+    /**
+     * Return the search statistics of all games.
+     */
+    public SearchStats getSearchStats ()
+    {
+        return stats;
+    }
+
+    /**
+     * Start a game.  Return its id.
+     */
+    public String newGame ()
+    {
+        Model model = new Model ();
+        AutoPlayer autoPlayer = new AutoPlayer (model);
+        autoPlayer.setTranspositionTable (table);
+        autoPlayer.setExecutor (searchWorkers);
+        autoPlayer.setTalkative (false);
+        autoPlayer.setEvaluator (evaluator);
+        if (recordWriter != null)
+            GameRecorder.record (model, recordWriter);
+        if (level >= 0)
+            autoPlayer.setLevel (level);
+        else
+            autoPlayer.setTimeBudget (timeBudget);
+
+        String id = Long.toString (nextId.getAndIncrement ());
+        SearchStats gameStats = new SearchStats (stats);
+        if (jmx)
+            register (gameStats, "game-" + id);
+        final GameSession session = new GameSession (
+            id, model, autoPlayer, gameStats, commandExecutor);
+        sessions.put (id, session);
+        session.submit (new Callable ()
+        {
+            public Object call ()
+            {
+                session.getModel ().restart ();
+                return null;
+            }
+        });
+        return id;
+    }
+
+    /**
+     * End a game.  Return false if there is no such game.
+     */
+    public boolean closeGame (String id)
+    {
+        GameSession session = (GameSession) sessions.remove (id);
+        if (session == null)
+            return false;
+        session.close ();
+        unregister (session.getStats ());
+        return true;
+    }
+
+    public int getGameCount ()
+    {
+        return sessions.size ();
+    }
+
+    /**
+     * Accept connections on the loopback interface at the given port, or
+     * any free port if zero, in a background thread.  Return the port.
+     */
+    public int listen (int port)
+        throws IOException
+    {
+        serverSocket =
+            new ServerSocket (port, 50, InetAddress.getLoopbackAddress ());
+        Thread acceptor = new Thread (new Runnable ()
+        {
+            public void run ()
+            {
+                accept ();
+            }
+        }, "accept");
+        acceptor.start ();
+        return serverSocket.getLocalPort ();
+    }
+
+    private void accept ()
+    {
+        try
+        {
+            for (;;)
+            {
+                final Socket socket = serverSocket.accept ();
+                connections.execute (new Runnable ()
+                {
+                    public void run ()
+                    {
+                        serve (socket);
+                    }
+                });
+            }
+        }
+        catch (IOException e)
+        {
+            // The socket has been closed.
+        }
+    }
+
+    /**
+     * Stop accepting connections, end all games, and release the threads.
+     */
+    public void shutdown ()
+        throws IOException
+    {
+        if (serverSocket != null)
+            serverSocket.close ();
+        for (Iterator it = sessions.keySet ().iterator (); it.hasNext (); )
+        {
+            closeGame ((String) it.next ());
+        }
+        setJmx (false);
+        connections.shutdownNow ();
+        commandExecutor.shutdown ();
+        searchWorkers.shutdown ();
+        if (recordWriter != null)
+            recordWriter.flush ();
+    }
+
+    //
+    // Answer the commands of one client until it quits.
+    //
+    private void serve (Socket socket)
+    {
+        try
+        {
+            BufferedReader in = new BufferedReader (
+                new InputStreamReader (socket.getInputStream (), "UTF-8"));
+            PrintWriter out = new PrintWriter (new OutputStreamWriter (
+                socket.getOutputStream (), "UTF-8"), true);
+            String line;
+            while ((line = in.readLine ()) != null)
+            {
+                if (line.trim ().equalsIgnoreCase ("QUIT"))
+                    break;
+                out.println (handle (line));
+            }
+        }
+        catch (IOException e)
+        {
+            // The client has gone.
+        }
+        finally
+        {
+            try
+            {
+                socket.close ();
+            }
+            catch (IOException e)
+            {
+            }
+        }
+    }
+
+    /**
+     * Carry out a command line of the protocol.  Return the reply.
+     */
+    String handle (String line)
+    {
+        StringTokenizer tokens = new StringTokenizer (line);
+        if (!tokens.hasMoreTokens ())
+            return "ERROR empty command";
+        String command = tokens.nextToken ().toUpperCase ();
+
+        if (command.equals ("NEW"))
+            return "OK " + newGame ();
+        if (command.equals ("GAMES"))
+            return "OK " + getGameCount ();
+        if (command.equals ("STATS") && !tokens.hasMoreTokens ())
+            return "OK " + stats;
+
+        if (!tokens.hasMoreTokens ())
+            return "ERROR missing game id";
+        String id = tokens.nextToken ();
+        GameSession session = (GameSession) sessions.get (id);
+        if (session == null)
+            return "ERROR no game " + id;
+
+        if (command.equals ("CLOSE"))
+            return closeGame (id) ? "OK" : "ERROR no game " + id;
+        if (command.equals ("STATS"))
+            return "OK " + session.getStats ();
+
+        final Model model = session.getModel ();
+        Callable callable;
+        if (command.equals ("MOVE") && tokens.hasMoreTokens ())
+        {
+            final String path = tokens.nextToken ();
+            callable = new Callable ()
+            {
+                public Object call ()
+                {
+                    return move (model, path);
+                }
+            };
+        }
+        else if (command.equals ("BOARD"))
+        {
+            callable = new Callable ()
+            {
+                public Object call ()
+                {
+                    return "OK " + formatBoard (model.copyGameState ());
+                }
+            };
+        }
+        else if (command.equals ("MOVES"))
+        {
+            callable = new Callable ()
+            {
+                public Object call ()
+                {
+                    return "OK" + formatMoves (model);
+                }
+            };
+        }
+        else
+        {
+            return "ERROR bad command " + line;
+        }
+
+        try
+        {
+            return (String) session.submit (callable).get ();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread ().interrupt ();
+            return "ERROR interrupted";
+        }
+        catch (ExecutionException e)
+        {
+            return "ERROR " + e.getCause ();
+        }
+    }
+
+    //
+    // Make SOUTH's move, given as a path of squares.
+    //
+    private static String move (Model model, String path)
+    {
+        if (model.getActivePlayer () != SOUTH)
+            return "ERROR not your turn";
+        for (MoveIterator it = model.iterateMoves (); it.hasNext (); )
+        {
+            Move move = it.getNext ();
+            if (BoardDiagram.formatMove (move).equals (path))
+            {
+                GameState gameState = model.copyGameState ();
+                return model.executeMove (gameState, move)
+                    ? "OK"
+                    : "ERROR not your turn";
+            }
+        }
+        return "ERROR illegal move " + path;
+    }
+
+    private static String formatBoard (GameState gameState)
+    {
+        String diagram = BoardDiagram.format (gameState);
+        if (gameState.getActivePlayer () == NULL_PLAYER)
+            diagram = diagram.substring (0, diagram.length () - 1) + "OVER";
+        return diagram;
+    }
+
+    private static String formatMoves (Model model)
+    {
+        StringBuffer buf = new StringBuffer ();
+        for (MoveIterator it = model.iterateMoves (); it.hasNext (); )
+        {
+            buf.append (' ');
+            buf.append (BoardDiagram.formatMove (it.getNext ()));
+        }
+        return buf.toString ();
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory
+    {
+        private String name;
+        private AtomicInteger count = new AtomicInteger ();
+
+        DaemonThreadFactory (String name)
+        {
+            this.name = name;
+        }
+
+        public Thread newThread (Runnable runnable)
+        {
+            Thread thread =
+                new Thread (runnable, name + "-" + count.incrementAndGet ());
+            thread.setDaemon (true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+//
+// GameSession.java
+//
+
+package net.ech.checkers;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+//
+// One game hosted by a GameServer: a model, and the auto-player that plays
+// NORTH in it.  Commands for the game run one at a time, in the order in
+// which they were submitted, in the server's command executor; no thread
+// is set aside for the game, so an idle game costs only its memory.
+//
+class GameSession
+{
+    private String id;
+    private Model model;
+    private AutoPlayer autoPlayer;
+    private SearchStats stats;
+    private Executor executor;
+
+    // Commands not yet run, and whether a thread is running them.
+    private LinkedList queue = new LinkedList ();
+    private boolean draining;
+
+    GameSession (String id, Model model, AutoPlayer autoPlayer,
+        SearchStats stats, Executor executor)
+    {
+        this.id = id;
+        this.model = model;
+        this.autoPlayer = autoPlayer;
+        this.stats = stats;
+        autoPlayer.setStatsListener (stats);
+        this.executor = executor;
+        model.addModelListener (autoPlayer);
+    }
+
+    String getId ()
+    {
+        return id;
+    }
+
+    Model getModel ()
+    {
+        return model;
+    }
+
+    /**
+     * Return how the auto-player has chosen its moves in this game.
+     */
+    SearchStats getStats ()
+    {
+        return stats;
+    }
+
+    /**
+     * Run a command after all those submitted before it.
+     */
+    Future submit (Callable command)
+    {
+        FutureTask task = new FutureTask (command);
+        synchronized (this)
+        {
+            queue.add (task);
+            if (draining)
+                return task;
+            draining = true;
+        }
+        executor.execute (new Runnable ()
+        {
+            public void run ()
+            {
+                drain ();
+            }
+        });
+        return task;
+    }
+
+    private void drain ()
+    {
+        for (;;)
+        {
+            FutureTask task;
+            synchronized (this)
+            {
+                if (queue.isEmpty ())
+                {
+                    draining = false;
+                    return;
+                }
+                task = (FutureTask) queue.removeFirst ();
+            }
+            task.run ();
+        }
+    }
+
+    /**
+     * Stop the auto-player, for good.
+     */
+    void close ()
+    {
+        model.removeModelListener (autoPlayer);
+        autoPlayer.cancel ();
+    }
+}
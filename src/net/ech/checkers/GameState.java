@@ -118,6 +118,15 @@ public class GameState implements Constants
         return activePlayer;
     }
 
+    /**
+     * Return the Zobrist hash key of the position: the pieces on the board
+     * and the player to move.
+     */
+    public long getHashKey ()
+    {
+        return board.getHashKey () ^ Zobrist.playerKey (activePlayer);
+    }
+
     public BoardState getBoardState ()
     {
         return board;
@@ -17,6 +17,19 @@ public class Hop extends Move
         super (origin, target);
     }
 
+    //
+    // Construct a hop from the first 'length' vertices of a path.
+    //
+    Hop (int[] path, int length)
+    {
+        super (path[0], path[1]);
+        if (length > 2)
+        {
+            extension = new int [length - 2];
+            System.arraycopy (path, 2, extension, 0, length - 2);
+        }
+    }
+
     public Hop extend (int nextTarget)
     {
         Hop newHop = new Hop (getOrigin (), getVertex (1));
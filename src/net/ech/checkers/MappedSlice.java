@@ -0,0 +1,45 @@
+//
+// MappedSlice.java
+//
+
+package net.ech.checkers;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+//
+// A slice of the endgame tables stored plain, one byte per position, and
+// mapped into memory.  A lookup reads the byte straight from the mapping;
+// the operating system pages the file in as needed and shares the pages
+// among all processes that map it.
+//
+class MappedSlice implements TablebaseSlice
+{
+    private ByteBuffer buffer;
+
+    MappedSlice (File file, long size)
+        throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile (file, "r");
+        try
+        {
+            FileChannel channel = raf.getChannel ();
+            if (channel.size () != size)
+                throw new IOException (file + ": wrong size");
+            buffer = channel.map (FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        finally
+        {
+            // The mapping outlives the channel.
+            raf.close ();
+        }
+    }
+
+    public int get (int index)
+    {
+        // An absolute get does not move the buffer's position, so is safe
+        // to make from several threads at once.
+        return buffer.get (index);
+    }
+}
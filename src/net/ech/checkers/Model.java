@@ -5,16 +5,77 @@
 package net.ech.checkers;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 /**
  * The model is the keeper of game state.
  * It fires events when game state changes.
+ *
+ * The game state and its legal moves are published together as an
+ * immutable snapshot, through an atomic reference.  Readers never lock:
+ * each read sees one whole snapshot, never a state half changed, and an
+ * iterator of moves keeps to the snapshot in which it was made.  A change
+ * builds a new snapshot from the current one and installs it by
+ * compare-and-set, trying again if another change got in first.  Listeners
+ * are told of each change after it has been installed.
+ *
+ * A listener added plainly is called in the thread that changed the model,
+ * before the change returns.  A listener added with an executor is called
+ * in that executor instead, so that a slow one cannot hold up the game:
+ * the changing thread only queues the new game state, and the listener
+ * receives all that is queued as one batch.  When its queue is full, new
+ * states are dropped (DROP_NEWEST), old ones are (DROP_OLDEST), or the
+ * changing thread waits for room (BLOCK).  Changes are queued in the order
+ * they were installed, even when made by several threads at once.
  */
-public class Model
+public class Model implements Constants
 {
-    private GameState gameState = new GameState ();
-    private Set listeners = new HashSet ();
-    private Move[] moves;
+    private AtomicReference snapshot =
+        new AtomicReference (new Snapshot (new GameState (), null, 0));
+    private Set listeners = new CopyOnWriteArraySet ();
+
+    // The sequence number of the last change queued for the dispatchers,
+    // guarded by postLock.
+    private Object postLock = new Object ();
+    private long posted;
+
+    // Listeners called in an executor, and their dispatchers.
+    private Map dispatchers = new ConcurrentHashMap ();
+
+    /**
+     * Policies for a listener whose queue is full: drop the new game state,
+     * drop the oldest queued one, or wait until the listener catches up.
+     * A BLOCK listener must not change the model in its executor's thread
+     * if that thread is the only one to run it: the change may wait for
+     * room in the listener's queue, which only that thread can make.  For
+     * that reason, BLOCK is refused for the shared event thread.
+     */
+    public final static int DROP_NEWEST = 0;
+    public final static int DROP_OLDEST = 1;
+    public final static int BLOCK = 2;
+
+    private final static int DEFAULT_CAPACITY = 256;
+
+    private static ExecutorService eventExecutor;
+
+    /**
+     * A game state and its legal moves, numbered in the order installed.
+     * Nothing is changed once the snapshot has been published.
+     */
+    static class Snapshot
+    {
+        final GameState gameState;
+        final Move[] moves;
+        final long sequence;
+
+        Snapshot (GameState gameState, Move[] moves, long sequence)
+        {
+            this.gameState = gameState;
+            this.moves = moves;
+            this.sequence = sequence;
+        }
+    }
 
     public Model ()
     {
@@ -28,24 +89,129 @@ public class Model
     public void removeModelListener (ModelListener listener)
     {
         listeners.remove (listener);
+        dispatchers.remove (listener);
+    }
+
+    /**
+     * Add a listener to be called in the given executor.  It is called
+     * once for each batch of changes, however many the batch holds.
+     */
+    public void addModelListener (final ModelListener listener,
+        Executor executor, int capacity, int policy)
+    {
+        addDispatcher (listener, new BatchModelListener ()
+        {
+            public void modelChanged (
+                Model model, GameState[] gameStates, int dropped)
+            {
+                listener.modelChanged (model);
+            }
+        }, executor, capacity, policy);
+    }
+
+    /**
+     * Add a listener to be given, in the given executor, the game states
+     * the model passes through.  The queue of states not yet given to the
+     * listener holds at most 'capacity' states; 'policy' says what happens
+     * when it is full.
+     */
+    public void addModelListener (BatchModelListener listener,
+        Executor executor, int capacity, int policy)
+    {
+        addDispatcher (listener, listener, executor, capacity, policy);
+    }
+
+    /**
+     * Add a listener to be given the game states the model passes through,
+     * in the shared event thread, dropping the oldest when it falls far
+     * behind.
+     */
+    public void addModelListener (BatchModelListener listener)
+    {
+        addModelListener (listener, getEventExecutor (), DEFAULT_CAPACITY,
+            DROP_OLDEST);
+    }
+
+    //
+    // Dispatch to a listener, under the key by which it may be removed.
+    //
+    private void addDispatcher (Object key, BatchModelListener listener,
+        Executor executor, int capacity, int policy)
+    {
+        if (policy == BLOCK && executor == getEventExecutor ())
+        {
+            throw new IllegalArgumentException (
+                "BLOCK in the shared event thread");
+        }
+        dispatchers.put (key,
+            new ModelDispatcher (this, listener, executor, capacity, policy));
+    }
+
+    public void removeModelListener (BatchModelListener listener)
+    {
+        dispatchers.remove (listener);
+    }
+
+    /**
+     * Return the executor shared by default by listeners that are not
+     * called in the thread that changes the model: one daemon thread.
+     */
+    public static synchronized ExecutorService getEventExecutor ()
+    {
+        if (eventExecutor == null)
+        {
+            eventExecutor = Executors.newSingleThreadExecutor (
+                new ThreadFactory ()
+                {
+                    public Thread newThread (Runnable runnable)
+                    {
+                        Thread thread = new Thread (runnable, "model-events");
+                        thread.setDaemon (true);
+                        return thread;
+                    }
+                });
+        }
+        return eventExecutor;
+    }
+
+    Snapshot getSnapshot ()
+    {
+        return (Snapshot) snapshot.get ();
     }
 
     public void clear ()
     {
+        GameState gameState = new GameState ();
         gameState.clear ();
-        modelChanged ();
+        replace (gameState, null);
     }
 
     public void restart ()
     {
+        GameState gameState = new GameState ();
         gameState.restart ();
-        modelChanged ();
-        moves = Rules.findMoves (gameState);
+        replace (gameState, findMoves (gameState));
+    }
+
+    //
+    // Install a game state in place of whatever is current.
+    //
+    private void replace (GameState gameState, Move[] moves)
+    {
+        Snapshot next;
+        for (;;)
+        {
+            Snapshot current = getSnapshot ();
+            next = new Snapshot (gameState, moves, current.sequence + 1);
+            if (snapshot.compareAndSet (current, next))
+                break;
+        }
+        modelChanged (next);
     }
 
     public int getActivePlayer ()
     {
-        return gameState.getActivePlayer ();
+        return getSnapshot ().gameState.getActivePlayer ();
     }
 
     /**
@@ -55,22 +221,22 @@ public class Model
      */
     public int getPlayerAt (int row, int column)
     {
-        return gameState.getPlayerAt (row, column);
+        return getSnapshot ().gameState.getPlayerAt (row, column);
     }
 
     public int getPlayerAt (int sqIndex)
     {
-        return gameState.getPlayerAt (sqIndex);
+        return getSnapshot ().gameState.getPlayerAt (sqIndex);
     }
 
     public boolean isKingAt (int row, int column)
     {
-        return gameState.isKingAt (row, column);
+        return getSnapshot ().gameState.isKingAt (row, column);
     }
 
     public boolean isKingAt (int sqIndex)
     {
-        return gameState.isKingAt (sqIndex);
+        return getSnapshot ().gameState.isKingAt (sqIndex);
     }
 
     //
@@ -93,6 +259,7 @@ public class Model
      */
     public MoveIterator iterateMoves (final MovePredicate predicate)
     {
+        final Move[] moves = getSnapshot ().moves;
         return new MoveIterator ()
         {
             private int moveIndex = 0;
@@ -125,18 +292,71 @@ public class Model
      */
     public void executeMove (Move move)
     {
-        if (!isLegalMove (move))
+        Snapshot next;
+        for (;;)
         {
-            throw new IllegalArgumentException (move.toString ());
+            Snapshot current = getSnapshot ();
+            if (!isLegalMove (current, move))
+            {
+                throw new IllegalArgumentException (move.toString ());
+            }
+            next = advance (current, move);
+            if (snapshot.compareAndSet (current, next))
+                break;
+        }
+        modelChanged (next);
+    }
+
+    /**
+     * Execute a move chosen in the given copy of the game state, unless
+     * the game has since moved on.  Return false, doing nothing, if the
+     * game is no longer in that state.
+     */
+    public boolean executeMove (GameState chosenIn, Move move)
+    {
+        Snapshot next;
+        for (;;)
+        {
+            Snapshot current = getSnapshot ();
+            GameState gameState = current.gameState;
+            if (gameState.getActivePlayer () != chosenIn.getActivePlayer () ||
+                gameState.getHashKey () != chosenIn.getHashKey ())
+            {
+                return false;
+            }
+            if (!isLegalMove (current, move))
+            {
+                throw new IllegalArgumentException (move.toString ());
+            }
+            next = advance (current, move);
+            if (snapshot.compareAndSet (current, next))
+                break;
         }
+        modelChanged (next);
+        return true;
+    }
 
+    private static Snapshot advance (Snapshot current, Move move)
+    {
+        GameState gameState = new GameState (current.gameState);
         gameState.executeMove (move);
-        moves = Rules.findMoves (gameState);
-        modelChanged ();
+        return new Snapshot (
+            gameState, findMoves (gameState), current.sequence + 1);
     }
 
-    private boolean isLegalMove (Move move)
+    //
+    // Once the game is over, there are no moves.
+    //
+    private static Move[] findMoves (GameState gameState)
     {
+        return gameState.getActivePlayer () == NULL_PLAYER
+            ? null
+            : Rules.findMoves (gameState);
+    }
+
+    private static boolean isLegalMove (Snapshot current, Move move)
+    {
+        Move[] moves = current.moves;
         if (moves != null)
         {
             for (int i = 0; i < moves.length; ++i)
@@ -148,18 +368,57 @@ public class Model
         return false;
     }
 
-    private void modelChanged ()
+    private void modelChanged (Snapshot next)
     {
-        ModelListener[] list =
-            (ModelListener[]) listeners.toArray (new ModelListener [0]);
-        for (int i = 0; i < list.length; ++i)
+        // Queue the change for the dispatchers after the change installed
+        // before it, whichever thread gets here first.  Each dispatcher
+        // gets its own copy, which its listener may keep.
+        synchronized (postLock)
         {
-            list[i].modelChanged (this);
+            boolean interrupted = false;
+            while (posted != next.sequence - 1)
+            {
+                try
+                {
+                    postLock.wait ();
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread ().interrupt ();
+
+            for (Iterator it = dispatchers.values ().iterator ();
+                it.hasNext (); )
+            {
+                ModelDispatcher dispatcher = (ModelDispatcher) it.next ();
+                dispatcher.offer (new GameState (next.gameState));
+            }
+            posted = next.sequence;
+            postLock.notifyAll ();
+        }
+
+        // Not under the lock: an executor may run a listener at once, in
+        // this thread, and the listener may change the model.
+        for (Iterator it = dispatchers.values ().iterator (); it.hasNext (); )
+        {
+            ((ModelDispatcher) it.next ()).schedule ();
+        }
+
+        for (Iterator it = listeners.iterator (); it.hasNext (); )
+        {
+            ((ModelListener) it.next ()).modelChanged (this);
         }
     }
 
+    /**
+     * Return a copy of the game state, all of one snapshot, for reading
+     * several things at once without seeing a change in between.
+     */
     public GameState copyGameState ()
     {
-        return new GameState (gameState);
+        return new GameState (getSnapshot ().gameState);
     }
 }
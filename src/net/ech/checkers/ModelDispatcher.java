@@ -0,0 +1,127 @@
+//
+// ModelDispatcher.java
+//
+
+package net.ech.checkers;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+//
+// Delivers the changes of a Model to one BatchModelListener in an executor.
+// The thread that changes the model only offers the new game state to a
+// bounded queue, in the order the model installed it, and then schedules
+// delivery; a task in the executor takes everything queued and hands it
+// to the listener as one batch.  At most one such task is pending or
+// running at a time, so that batches arrive in order, one at a time, and
+// a burst of changes made while the listener is busy becomes one batch.
+//
+class ModelDispatcher implements Runnable
+{
+    private Model model;
+    private BatchModelListener listener;
+    private Executor executor;
+    private int policy;
+    private BlockingQueue queue;
+    private AtomicBoolean scheduled = new AtomicBoolean ();
+    private AtomicInteger dropped = new AtomicInteger ();
+
+    ModelDispatcher (Model model, BatchModelListener listener,
+        Executor executor, int capacity, int policy)
+    {
+        this.model = model;
+        this.listener = listener;
+        this.executor = executor;
+        this.policy = policy;
+        this.queue = new ArrayBlockingQueue (Math.max (capacity, 1));
+    }
+
+    /**
+     * Queue a game state for the listener, as the policy says when the
+     * queue is full.  Call schedule to see that it will be delivered.
+     */
+    void offer (GameState gameState)
+    {
+        switch (policy)
+        {
+        case Model.DROP_OLDEST:
+            while (!queue.offer (gameState))
+            {
+                if (queue.poll () != null)
+                    dropped.incrementAndGet ();
+            }
+            break;
+        case Model.BLOCK:
+            try
+            {
+                queue.put (gameState);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread ().interrupt ();
+                dropped.incrementAndGet ();
+            }
+            break;
+        default:
+            if (!queue.offer (gameState))
+                dropped.incrementAndGet ();
+            break;
+        }
+    }
+
+    /**
+     * See that what is queued will be delivered.
+     */
+    void schedule ()
+    {
+        if (scheduled.compareAndSet (false, true))
+        {
+            try
+            {
+                executor.execute (this);
+            }
+            catch (RejectedExecutionException e)
+            {
+                // The executor has been shut down; nothing more is heard.
+                scheduled.set (false);
+            }
+        }
+    }
+
+    /**
+     * Deliver batches until the queue is empty.
+     */
+    public void run ()
+    {
+        List batch = new ArrayList ();
+        for (;;)
+        {
+            queue.drainTo (batch);
+            int droppedCount = dropped.getAndSet (0);
+            if (batch.isEmpty () && droppedCount == 0)
+            {
+                scheduled.set (false);
+
+                // A state posted after the queue was found empty, but
+                // before the flag was cleared, found a task scheduled.
+                if (queue.isEmpty () || !scheduled.compareAndSet (false, true))
+                    return;
+                continue;
+            }
+
+            GameState[] gameStates =
+                (GameState[]) batch.toArray (new GameState [batch.size ()]);
+            batch.clear ();
+            try
+            {
+                listener.modelChanged (model, gameStates, droppedCount);
+            }
+            catch (RuntimeException e)
+            {
+                // One bad batch does not stop the ones after it.
+                e.printStackTrace ();
+            }
+        }
+    }
+}
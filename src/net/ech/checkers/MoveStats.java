@@ -0,0 +1,263 @@
+//
+// MoveStats.java
+//
+
+package net.ech.checkers;
+
+/**
+ * What AutoPlayer did to choose one move: how far and how wide it looked,
+ * how long it took, and where the time went.  Counts are summed over all
+ * the threads that searched, and over all levels of a search by time
+ * budget, except the nodes of the last level completed.
+ *
+ * The time spent generating moves and grading positions is estimated by
+ * timing one call in every Searcher.SAMPLE_INTERVAL, so that the search
+ * does not read the clock at every node.
+ */
+public class MoveStats
+{
+    // Filled in by Searcher, RootSearch and AutoPlayer.
+    boolean book;
+    int moveCount;
+    int level = -1;
+    int maxDepth;
+    long nanos;
+    long nodes;
+    long levelNodes;
+    long quiescenceNodes;
+    long cutoffs;
+    long generations;
+    long quiescenceGenerations;
+    long generateNanos;
+    long evaluations;
+    long evaluateNanos;
+    long tableProbes;
+    long tableHits;
+
+    MoveStats ()
+    {
+    }
+
+    //
+    // Add the counts of another part of the same search.
+    //
+    void add (MoveStats that)
+    {
+        maxDepth = Math.max (maxDepth, that.maxDepth);
+        nodes += that.nodes;
+        quiescenceNodes += that.quiescenceNodes;
+        cutoffs += that.cutoffs;
+        generations += that.generations;
+        quiescenceGenerations += that.quiescenceGenerations;
+        generateNanos += that.generateNanos;
+        evaluations += that.evaluations;
+        evaluateNanos += that.evaluateNanos;
+        tableProbes += that.tableProbes;
+        tableHits += that.tableHits;
+    }
+
+    /**
+     * Return true if the move came from the opening book, unsearched.
+     */
+    public boolean isBook ()
+    {
+        return book;
+    }
+
+    /**
+     * Return the number of legal moves there were to choose from.
+     */
+    public int getMoveCount ()
+    {
+        return moveCount;
+    }
+
+    /**
+     * Return the last lookahead level completed, or -1 if there was no
+     * search.  Level 0 looks one ply ahead.
+     */
+    public int getLevel ()
+    {
+        return level;
+    }
+
+    /**
+     * Return the number of plies looked ahead at every move, one more than
+     * the level.
+     */
+    public int getDepth ()
+    {
+        return level + 1;
+    }
+
+    /**
+     * Return the most plies looked ahead along any line, counting the
+     * captures played out past the horizon.
+     */
+    public int getSelectiveDepth ()
+    {
+        return maxDepth;
+    }
+
+    /**
+     * Return the time taken to choose the move, in nanoseconds.
+     */
+    public long getNanos ()
+    {
+        return nanos;
+    }
+
+    /**
+     * Return the number of moves postulated.
+     */
+    public long getNodes ()
+    {
+        return nodes;
+    }
+
+    /**
+     * Return the number of moves postulated by the last level completed
+     * alone, not counting lazy SMP helpers, which search levels of their
+     * own.
+     */
+    public long getLevelNodes ()
+    {
+        return levelNodes;
+    }
+
+    /**
+     * Return the number of moves postulated past the horizon: captures.
+     */
+    public long getQuiescenceNodes ()
+    {
+        return quiescenceNodes;
+    }
+
+    public long getNodesPerSecond ()
+    {
+        return nanos == 0 ? 0 : (long) (nodes * 1e9 / nanos);
+    }
+
+    /**
+     * Return the effective branching factor: the number of moves that,
+     * postulated at each of getDepth plies, would make as many nodes as
+     * the last level completed.  The levels before it are left out, as
+     * they would make the tree look bushier than it is.
+     */
+    public double getBranchingFactor ()
+    {
+        return level < 0 || levelNodes == 0
+            ? 0
+            : Math.pow (levelNodes, 1.0 / getDepth ());
+    }
+
+    /**
+     * Return the number of times moves were generated: the number of
+     * positions searched other than at the horizon, counting those past
+     * it where captures were played out.
+     */
+    public long getGenerations ()
+    {
+        return generations;
+    }
+
+    /**
+     * Return the number of times moves were generated past the horizon,
+     * to play out captures.
+     */
+    public long getQuiescenceGenerations ()
+    {
+        return quiescenceGenerations;
+    }
+
+    /**
+     * Return the number of times the search short of the horizon was cut
+     * off by a bound.
+     */
+    public long getCutoffs ()
+    {
+        return cutoffs;
+    }
+
+    /**
+     * Return the fraction of positions searched short of the horizon in
+     * which the search was cut off.
+     */
+    public double getCutoffRate ()
+    {
+        long searched = generations - quiescenceGenerations;
+        return searched == 0 ? 0 : (double) cutoffs / searched;
+    }
+
+    public long getTableProbes ()
+    {
+        return tableProbes;
+    }
+
+    public long getTableHits ()
+    {
+        return tableHits;
+    }
+
+    /**
+     * Return the fraction of transposition table lookups that found the
+     * position.
+     */
+    public double getTableHitRate ()
+    {
+        return tableProbes == 0 ? 0 : (double) tableHits / tableProbes;
+    }
+
+    /**
+     * Return the estimated time spent generating moves, in nanoseconds.
+     */
+    public long getGenerateNanos ()
+    {
+        return generateNanos;
+    }
+
+    /**
+     * Return the number of positions graded.
+     */
+    public long getEvaluations ()
+    {
+        return evaluations;
+    }
+
+    /**
+     * Return the estimated time spent grading positions, in nanoseconds.
+     */
+    public long getEvaluateNanos ()
+    {
+        return evaluateNanos;
+    }
+
+    public String toString ()
+    {
+        if (book)
+            return "book move in " + millis (nanos) + " ms";
+        return "depth " + getDepth () + "/" + maxDepth + ", " +
+            nodes + " nodes in " + millis (nanos) + " ms (" +
+            getNodesPerSecond () + "/sec), branching " +
+            round (getBranchingFactor ()) + ", cutoffs " +
+            percent (getCutoffRate ()) + ", table hits " +
+            percent (getTableHitRate ()) + ", movegen " +
+            millis (generateNanos) + " ms, eval " +
+            millis (evaluateNanos) + " ms";
+    }
+
+    static double millis (long nanos)
+    {
+        return Math.round (nanos / 1e4) / 100.0;
+    }
+
+    static String percent (double fraction)
+    {
+        return round (fraction * 100) + "%";
+    }
+
+    static double round (double value)
+    {
+        return Math.round (value * 10) / 10.0;
+    }
+}
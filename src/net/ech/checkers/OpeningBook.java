@@ -0,0 +1,139 @@
+//
+// OpeningBook.java
+//
+
+package net.ech.checkers;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A book of opening moves: the best move, found in advance by a deep
+ * search, for each of the positions near the start of a game that the
+ * book covers.  Built by OpeningBookBuilder.
+ *
+ * The book file is a header of two big-endian ints, MAGIC and the number
+ * of entries, followed by the entries in increasing order of key.  Each
+ * entry is two big-endian longs: the Zobrist hash key of a game state (see
+ * GameState.getHashKey) and its move, packed as described in PackedMove.
+ * The whole book is read into two arrays and searched by bisection.
+ */
+public class OpeningBook implements Constants
+{
+    final static int MAGIC = 0x43424b31;        // "CBK1"
+
+    private long[] keys;
+    private long[] moves;
+
+    /**
+     * Read a book file.
+     */
+    public OpeningBook (File file)
+        throws IOException
+    {
+        DataInputStream in = new DataInputStream (
+            new BufferedInputStream (new FileInputStream (file)));
+        try
+        {
+            if (in.readInt () != MAGIC)
+                throw new IOException (file + ": not an opening book");
+            int count = in.readInt ();
+            keys = new long [count];
+            moves = new long [count];
+            for (int i = 0; i < count; ++i)
+            {
+                keys[i] = in.readLong ();
+                moves[i] = in.readLong ();
+                if (i > 0 && keys[i] <= keys[i - 1])
+                    throw new IOException (file + ": out of order");
+            }
+        }
+        finally
+        {
+            in.close ();
+        }
+    }
+
+    /**
+     * Construct a book from a map of Long hash keys to Long packed moves.
+     */
+    OpeningBook (Map entries)
+    {
+        keys = new long [entries.size ()];
+        moves = new long [entries.size ()];
+        int count = 0;
+        for (Iterator it = new TreeMap (entries).entrySet ().iterator ();
+            it.hasNext (); ++count)
+        {
+            Map.Entry entry = (Map.Entry) it.next ();
+            keys[count] = ((Long) entry.getKey ()).longValue ();
+            moves[count] = ((Long) entry.getValue ()).longValue ();
+        }
+    }
+
+    /**
+     * Write the book to a file.
+     */
+    public void write (File file)
+        throws IOException
+    {
+        DataOutputStream out = new DataOutputStream (
+            new BufferedOutputStream (new FileOutputStream (file)));
+        try
+        {
+            out.writeInt (MAGIC);
+            out.writeInt (keys.length);
+            for (int i = 0; i < keys.length; ++i)
+            {
+                out.writeLong (keys[i]);
+                out.writeLong (moves[i]);
+            }
+        }
+        finally
+        {
+            out.close ();
+        }
+    }
+
+    /**
+     * Return the number of positions in the book.
+     */
+    public int size ()
+    {
+        return keys.length;
+    }
+
+    /**
+     * Return the book move for a game state, packed, or zero if the game
+     * state is not in the book.  A move that is not legal in the game state,
+     * as it might be if two positions had the same key, is not returned.
+     */
+    public long lookUp (GameState gameState)
+    {
+        int i = Arrays.binarySearch (keys, gameState.getHashKey ());
+        if (i < 0)
+            return 0;
+
+        long[] legalMoves = new long [PackedMove.MAX_MOVES];
+        int count = Rules.generateMoves (gameState.getBoardState (),
+            gameState.getActivePlayer (), legalMoves, 0);
+        for (int j = 0; j < count; ++j)
+        {
+            if (legalMoves[j] == moves[i])
+                return moves[i];
+        }
+        return 0;
+    }
+
+    /**
+     * Return the book move for a game state, or null if the game state is
+     * not in the book.
+     */
+    public Move getMove (GameState gameState)
+    {
+        long move = lookUp (gameState);
+        return move == 0
+            ? null
+            : Rules.toMove (gameState.getBoardState (), move);
+    }
+}
@@ -0,0 +1,173 @@
+//
+// OpeningBookBuilder.java
+//
+
+package net.ech.checkers;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Builds an OpeningBook by searching deeply every position that a player
+ * following the book can meet in the first moves of a game.
+ *
+ * Usage: OpeningBookBuilder [-plies n] [-level n] [-threads n] file
+ *
+ * The book is built for each side in turn.  Where the side is to move, the
+ * best move is found by a search to the given level (10 by default), and
+ * only that move is followed.  Where the other side is to move, every move
+ * is followed.  The tree is followed to the given number of plies from the
+ * start of the game (8 by default).  A position met more than once is
+ * searched once.
+ */
+public class OpeningBookBuilder implements Constants
+{
+    private final static int DEFAULT_PLIES = 8;
+    private final static int DEFAULT_LEVEL = 10;
+
+    // Megabytes.
+    private final static int TABLE_SIZE = 64;
+
+    private int level;
+    private TranspositionTable table = new TranspositionTable (TABLE_SIZE);
+    private ForkJoinPool pool;
+    private Map entries = new HashMap ();
+    private PrintStream logStream = System.out;
+
+    public static void main (String[] args)
+        throws IOException
+    {
+        int plies = DEFAULT_PLIES;
+        int level = DEFAULT_LEVEL;
+        int threads = 1;
+        File file = null;
+
+        for (int i = 0; i < args.length; ++i)
+        {
+            if (args[i].equals ("-plies") && i + 1 < args.length)
+                plies = Integer.parseInt (args[++i]);
+            else if (args[i].equals ("-level") && i + 1 < args.length)
+                level = Integer.parseInt (args[++i]);
+            else if (args[i].equals ("-threads") && i + 1 < args.length)
+                threads = Integer.parseInt (args[++i]);
+            else if (file == null)
+                file = new File (args[i]);
+            else
+                usage ();
+        }
+        if (file == null)
+            usage ();
+
+        long start = System.currentTimeMillis ();
+        OpeningBookBuilder builder = new OpeningBookBuilder (level, threads);
+        OpeningBook book;
+        try
+        {
+            book = builder.build (plies);
+        }
+        finally
+        {
+            builder.close ();
+        }
+        book.write (file);
+        System.out.println (file + ": " + book.size () + " positions, " +
+            (System.currentTimeMillis () - start) + " ms");
+    }
+
+    private static void usage ()
+    {
+        System.err.println ("usage: OpeningBookBuilder " +
+            "[-plies n] [-level n] [-threads n] file");
+        System.exit (1);
+    }
+
+    /**
+     * Construct a builder that searches to the given level, splitting each
+     * search among the given number of threads.
+     */
+    public OpeningBookBuilder (int level, int threads)
+    {
+        this.level = level;
+        if (threads > 1)
+            this.pool = new ForkJoinPool (threads);
+    }
+
+    /**
+     * Set where to report progress, or null for nowhere.
+     */
+    public void setLogStream (PrintStream logStream)
+    {
+        this.logStream = logStream;
+    }
+
+    /**
+     * Release the threads.
+     */
+    public void close ()
+    {
+        if (pool != null)
+            pool.shutdown ();
+    }
+
+    /**
+     * Build a book for both sides, to the given number of plies.
+     */
+    public OpeningBook build (int plies)
+    {
+        GameState gameState = new GameState ();
+        gameState.restart ();
+        expand (gameState, plies, SOUTH);
+        expand (gameState, plies, NORTH);
+        return new OpeningBook (entries);
+    }
+
+    //
+    // Follow the book move of the book side, and every move of the other.
+    //
+    private void expand (GameState gameState, int plies, int bookSide)
+    {
+        if (plies == 0 || gameState.getActivePlayer () == NULL_PLAYER)
+            return;
+
+        if (gameState.getActivePlayer () == bookSide)
+        {
+            long move = bestMove (gameState);
+            GameState next = new GameState (gameState);
+            next.executeMove (Rules.toMove (gameState.getBoardState (), move));
+            expand (next, plies - 1, bookSide);
+        }
+        else
+        {
+            Move[] moves = Rules.findMoves (gameState);
+            for (int i = 0; i < moves.length; ++i)
+            {
+                GameState next = new GameState (gameState);
+                next.executeMove (moves[i]);
+                expand (next, plies - 1, bookSide);
+            }
+        }
+    }
+
+    //
+    // Search a position, unless it has been searched already.
+    //
+    private long bestMove (GameState gameState)
+    {
+        Long key = Long.valueOf (gameState.getHashKey ());
+        Long move = (Long) entries.get (key);
+        if (move == null)
+        {
+            table.newSearch ();
+            RootSearch search = new RootSearch (gameState, table, pool, false);
+            if (search.getMoveCount () > 1)
+                search.search (level);
+            move = Long.valueOf (search.getMove (0));
+            entries.put (key, move);
+
+            if (logStream != null && entries.size () % 100 == 0)
+                logStream.println (entries.size () + " positions searched");
+        }
+        return move.longValue ();
+    }
+}
@@ -0,0 +1,137 @@
+//
+// PackedMove.java
+//
+
+package net.ech.checkers;
+
+/**
+ * A checkers move packed into a long, for search code that must not
+ * allocate a Move per node.  See Rules.generateMoves.
+ *
+ * Bits 0-31 hold the mask of captured squares, in the layout of the
+ * BoardState masks.  Bits 32-36 and 37-41 hold the bit numbers of the
+ * origin and final target squares.  Bits 42-45 hold the number of hops,
+ * which is zero for a sliding move.  The hop path itself is not stored;
+ * Rules.toMove recovers it from the board.
+ */
+public class PackedMove implements Constants
+{
+    /**
+     * A buffer of this many entries holds every move of any position.
+     */
+    public final static int MAX_MOVES = 128;
+
+    private final static int ORIGIN_SHIFT = 32;
+    private final static int TARGET_SHIFT = 37;
+    private final static int HOPS_SHIFT = 42;
+
+    // Do not instantiate.
+    private PackedMove ()
+    {
+    }
+
+    static long pack (int originBit, int targetBit, int hops, int captured)
+    {
+        return
+            (captured & 0xffffffffL) |
+            ((long) originBit << ORIGIN_SHIFT) |
+            ((long) targetBit << TARGET_SHIFT) |
+            ((long) hops << HOPS_SHIFT);
+    }
+
+    /**
+     * Pack a Move.
+     */
+    public static long pack (Move move)
+    {
+        int length = move.getLength ();
+        int captured = 0;
+        if (move.isHop ())
+        {
+            for (int i = 1; i <= length; ++i)
+            {
+                captured |= Bitboard.squareToMask (Position.between (
+                    move.getVertex (i - 1), move.getVertex (i)));
+            }
+        }
+        return pack (
+            squareToBit (move.getOrigin ()),
+            squareToBit (move.getVertex (length)),
+            move.isHop () ? length : 0,
+            captured);
+    }
+
+    private static int squareToBit (int sqIndex)
+    {
+        return Integer.numberOfTrailingZeros (Bitboard.squareToMask (sqIndex));
+    }
+
+    //
+    // Field access in board mask terms, for search code.
+    //
+
+    static int getOriginBit (long move)
+    {
+        return (int) (move >>> ORIGIN_SHIFT) & 0x1f;
+    }
+
+    static int getTargetBit (long move)
+    {
+        return (int) (move >>> TARGET_SHIFT) & 0x1f;
+    }
+
+    static int getOriginMask (long move)
+    {
+        return 1 << getOriginBit (move);
+    }
+
+    static int getTargetMask (long move)
+    {
+        return 1 << getTargetBit (move);
+    }
+
+    /**
+     * Return the mask of squares whose pieces this move captures.
+     */
+    public static int getCaptured (long move)
+    {
+        return (int) move;
+    }
+
+    /**
+     * Return the square index at which the move starts.
+     */
+    public static int getOrigin (long move)
+    {
+        return Bitboard.bitToSquare (getOriginBit (move));
+    }
+
+    /**
+     * Return the square index at which the move ends.
+     */
+    public static int getTarget (long move)
+    {
+        return Bitboard.bitToSquare (getTargetBit (move));
+    }
+
+    /**
+     * Return the number of pieces captured, zero for a sliding move.
+     */
+    public static int getHopCount (long move)
+    {
+        return (int) (move >>> HOPS_SHIFT) & 0xf;
+    }
+
+    public static boolean isHop (long move)
+    {
+        return getHopCount (move) != 0;
+    }
+
+    public static String toString (long move)
+    {
+        return
+            (isHop (move) ? "hop " : "move ") +
+            getOrigin (move) + "->" + getTarget (move) +
+            (getHopCount (move) > 1 ? " x" + getHopCount (move) : "");
+    }
+}
@@ -0,0 +1,170 @@
+//
+// Perft.java
+//
+
+package net.ech.checkers;
+
+/**
+ * Perft: counts the positions reachable in exactly N moves, to check the
+ * move generator against known counts and to measure its speed.
+ *
+ * Usage: Perft [-divide] [-packed] depth [diagram]
+ *
+ * The position is the start of a new game unless given as a BoardDiagram.
+ * With -divide, the count is broken down by first move.  By default the
+ * count is made with Rules.findMoves and GameState.executeMove; with
+ * -packed, it is made with Rules.generateMoves and SearchBoard instead.
+ *
+ * From the starting position, depths 1 through 12 should give 7, 49, 302,
+ * 1469, 7361, 36768, 179740, 845931, 3963680, 18391564, 85242128 and
+ * 388623673.  From a position in which the player to move cannot move,
+ * such as
+ *
+ *     ..../..../..../..../..../..../n.../s...:N
+ *
+ * where the north man is blocked, every depth past 0 should give 0.
+ */
+public class Perft implements Constants
+{
+    // Do not instantiate.
+    private Perft ()
+    {
+    }
+
+    public static void main (String[] args)
+    {
+        boolean divide = false;
+        boolean packed = false;
+        int depth = -1;
+        GameState gameState = null;
+
+        for (int i = 0; i < args.length; ++i)
+        {
+            if (args[i].equals ("-divide"))
+                divide = true;
+            else if (args[i].equals ("-packed"))
+                packed = true;
+            else if (depth < 0)
+                depth = Integer.parseInt (args[i]);
+            else if (gameState == null)
+                gameState = BoardDiagram.parse (args[i]);
+            else
+                usage ();
+        }
+        if (depth < 0)
+            usage ();
+        if (gameState == null)
+        {
+            gameState = new GameState ();
+            gameState.restart ();
+        }
+
+        System.out.println (BoardDiagram.format (gameState));
+
+        long start = System.nanoTime ();
+        long nodes;
+        if (divide)
+            nodes = divide (gameState, depth, packed);
+        else if (packed)
+            nodes = perftPacked (gameState, depth);
+        else
+            nodes = perft (gameState, depth);
+        long nanos = Math.max (System.nanoTime () - start, 1);
+
+        System.out.println ("depth " + depth + ": " + nodes + " nodes, " +
+            (nanos / 1000000) + " ms, " +
+            (long) (nodes * 1e9 / nanos) + " nodes/sec");
+    }
+
+    private static void usage ()
+    {
+        System.err.println (
+            "usage: Perft [-divide] [-packed] depth [diagram]");
+        System.exit (1);
+    }
+
+    /**
+     * Count the positions reachable in exactly 'depth' moves, using
+     * Rules.findMoves and GameState.executeMove.
+     */
+    public static long perft (GameState gameState, int depth)
+    {
+        if (depth == 0)
+            return 1;
+        if (gameState.getActivePlayer () == NULL_PLAYER)
+            return 0;
+
+        // No moves at all is null, not an empty array.
+        Move[] moves = Rules.findMoves (gameState);
+        if (moves == null)
+            return 0;
+        if (depth == 1)
+            return moves.length;
+
+        long nodes = 0;
+        for (int i = 0; i < moves.length; ++i)
+        {
+            GameState next = new GameState (gameState);
+            next.executeMove (moves[i]);
+            nodes += perft (next, depth - 1);
+        }
+        return nodes;
+    }
+
+    /**
+     * Count the positions reachable in exactly 'depth' moves, using
+     * Rules.generateMoves and SearchBoard.
+     */
+    public static long perftPacked (GameState gameState, int depth)
+    {
+        if (depth == 0)
+            return 1;
+        if (gameState.getActivePlayer () == NULL_PLAYER)
+            return 0;
+
+        long[][] buffers = new long [depth][PackedMove.MAX_MOVES];
+        return perftPacked (new SearchBoard (gameState), buffers, depth);
+    }
+
+    private static long perftPacked (
+        SearchBoard board, long[][] buffers, int depth)
+    {
+        long[] moves = buffers[depth - 1];
+        int count = board.generateMoves (moves, 0);
+        if (depth == 1)
+            return count;
+
+        long nodes = 0;
+        for (int i = 0; i < count; ++i)
+        {
+            board.makeMove (moves[i]);
+            nodes += perftPacked (board, buffers, depth - 1);
+            board.unmakeMove ();
+        }
+        return nodes;
+    }
+
+    //
+    // Print the count under each first move; return the total.
+    //
+    private static long divide (GameState gameState, int depth, boolean packed)
+    {
+        if (depth == 0 || gameState.getActivePlayer () == NULL_PLAYER)
+            return depth == 0 ? 1 : 0;
+
+        long total = 0;
+        Move[] moves = Rules.findMoves (gameState);
+        for (int i = 0; moves != null && i < moves.length; ++i)
+        {
+            GameState next = new GameState (gameState);
+            next.executeMove (moves[i]);
+            long nodes =
+                packed
+                    ? perftPacked (next, depth - 1)
+                    : perft (next, depth - 1);
+            System.out.println (moves[i] + ": " + nodes);
+            total += nodes;
+        }
+        return total;
+    }
+}
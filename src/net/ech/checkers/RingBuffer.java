@@ -0,0 +1,84 @@
+//
+// RingBuffer.java
+//
+
+package net.ech.checkers;
+
+import java.util.concurrent.atomic.*;
+
+//
+// A bounded queue for many producers and one consumer, without locks.  A
+// producer claims the next slot by advancing the tail, unless the ring is
+// full, and then fills it; the consumer empties slots in order from the
+// head, stopping at one claimed but not yet filled.  Offering to a full
+// ring fails at once, so producers never wait.
+//
+class RingBuffer
+{
+    private AtomicReferenceArray slots;
+    private int mask;
+    private AtomicLong tail = new AtomicLong ();
+
+    // Written by the consumer only.
+    private volatile long head;
+
+    /**
+     * Construct a ring of at least the given capacity, rounded up to a
+     * power of two.
+     */
+    RingBuffer (int capacity)
+    {
+        int size = Integer.highestOneBit (Math.max (capacity, 2) - 1) << 1;
+        slots = new AtomicReferenceArray (size);
+        mask = size - 1;
+    }
+
+    int getCapacity ()
+    {
+        return mask + 1;
+    }
+
+    /**
+     * Add an element, not null, if there is room.  Return false if the ring
+     * is full.  May be called from any thread.
+     */
+    boolean offer (Object element)
+    {
+        for (;;)
+        {
+            long claim = tail.get ();
+            if (claim - head > mask)
+                return false;
+            if (tail.compareAndSet (claim, claim + 1))
+            {
+                slots.lazySet ((int) claim & mask, element);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Remove and return the element at the head, or null if there is none
+     * yet.  To be called from the consumer thread only.
+     */
+    Object poll ()
+    {
+        long next = head;
+        int index = (int) next & mask;
+        Object element = slots.get (index);
+        if (element != null)
+        {
+            slots.lazySet (index, null);
+            head = next + 1;
+        }
+        return element;
+    }
+
+    /**
+     * Return true if no element has been offered that is not yet polled.
+     */
+    boolean isEmpty ()
+    {
+        return tail.get () == head;
+    }
+}
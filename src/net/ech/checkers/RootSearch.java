@@ -0,0 +1,421 @@
+//
+// RootSearch.java
+//
+
+package net.ech.checkers;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+//
+// The top level of AutoPlayer's lookahead: scores each of the legal moves
+// and picks the best.  The first move is searched in full; the others need
+// only be shown to be no better than the best so far.  Given a thread pool,
+// those others are searched concurrently, each on its own Searcher, all
+// bounded by the best score found so far by any of them.
+//
+// Alternatively, the pool may run "lazy SMP" helpers: searchers that look
+// ahead from the same position as the main search, each to slightly
+// different depths and in a different move order, and feed what they find
+// to the main search through the shared transposition table.
+//
+class RootSearch implements Constants
+{
+    private GameState gameState;
+    private TranspositionTable table;
+    private Tablebase tablebase;
+    private Evaluator evaluator = StandardEvaluator.getDefault ();
+    private ForkJoinPool pool;
+    private boolean lazySmp;
+    private long deadline;
+
+    private Searcher searcher;
+    private long[] moves = new long [PackedMove.MAX_MOVES];
+    private int count;
+    private int[] scores = new int [PackedMove.MAX_MOVES];
+    private boolean[] exact = new boolean [PackedMove.MAX_MOVES];
+
+    // Counts of the searchers of parallel tasks and helpers, once done.
+    private MoveStats counts = new MoveStats ();
+
+    // Best result so far of the current level, shared by parallel tasks.
+    private int bestScore;
+    private int bestIndex;
+
+    // Lazy SMP helpers and their tasks.
+    private List helpers = new ArrayList ();
+    private List helperTasks = new ArrayList ();
+
+    // Searchers of parallel tasks and helpers under way, and whether to
+    // abort them.
+    private Set workers = new HashSet ();
+    private boolean aborting;
+
+    /**
+     * Prepare to search the given position.  The transposition table and
+     * the pool may be null.  If 'lazySmp' is true, the pool runs helpers
+     * (see startHelpers) rather than splitting the root moves.
+     */
+    RootSearch (GameState gameState, TranspositionTable table,
+        ForkJoinPool pool, boolean lazySmp)
+    {
+        this.gameState = gameState;
+        this.table = table;
+        this.pool = pool;
+        this.lazySmp = lazySmp;
+        this.searcher = new Searcher (gameState, table);
+        this.count = searcher.generateRootMoves (moves);
+
+        // Select randomly among equally ranked moves.
+        scramble ();
+    }
+
+    private void scramble ()
+    {
+        for (int i = count; --i >= 0; )
+        {
+            int selected = (int) (Math.random () * (i + 1));
+            long temp = moves[i];
+            moves[i] = moves[selected];
+            moves[selected] = temp;
+        }
+    }
+
+    /**
+     * Consult the given endgame tables, or none if null.
+     */
+    void setTablebase (Tablebase tablebase)
+    {
+        this.tablebase = tablebase;
+        searcher.setTablebase (tablebase);
+    }
+
+    /**
+     * Grade positions with the given evaluator.
+     */
+    void setEvaluator (Evaluator evaluator)
+    {
+        this.evaluator = evaluator;
+        searcher.setEvaluator (evaluator);
+    }
+
+    /**
+     * Set the time, in System.nanoTime terms, at which to abort.
+     */
+    void setDeadline (long deadline)
+    {
+        this.deadline = deadline;
+        searcher.setDeadline (deadline);
+    }
+
+    /**
+     * Make the search, and any parallel searches, abort soon by throwing
+     * SearchAbortedException.  May be called from any thread.
+     */
+    void abort ()
+    {
+        searcher.abort ();
+        synchronized (this)
+        {
+            aborting = true;
+            for (Iterator it = workers.iterator (); it.hasNext (); )
+            {
+                ((Searcher) it.next ()).abort ();
+            }
+        }
+    }
+
+    //
+    // Note a searcher of a parallel task or helper, and abort it if the
+    // search is being aborted.
+    //
+    private synchronized void addWorker (Searcher worker)
+    {
+        workers.add (worker);
+        if (aborting)
+            worker.abort ();
+    }
+
+    private synchronized void removeWorker (Searcher worker)
+    {
+        workers.remove (worker);
+    }
+
+    int getMoveCount ()
+    {
+        return count;
+    }
+
+    /**
+     * Return a legal move, best first after a search.
+     */
+    long getMove (int index)
+    {
+        return moves[index];
+    }
+
+    /**
+     * Return the score of a move found by the last search.
+     */
+    int getScore (int index)
+    {
+        return scores[index];
+    }
+
+    /**
+     * Return false if the score of a move is only an upper bound.
+     */
+    boolean isExact (int index)
+    {
+        return exact[index];
+    }
+
+    /**
+     * Write the principal variation of the best move of the last search
+     * to 'line'.  Return its length.
+     */
+    int getPrincipalVariation (long[] line)
+    {
+        return searcher.getPrincipalVariation (moves[0], line);
+    }
+
+    long getNodes ()
+    {
+        return counts.nodes + searcher.getNodes ();
+    }
+
+    long getCutoffs ()
+    {
+        return counts.cutoffs + searcher.getCutoffs ();
+    }
+
+    /**
+     * Add the counts of all searches so far to the stats.
+     */
+    synchronized void addCounts (MoveStats stats)
+    {
+        stats.add (counts);
+        searcher.addCounts (stats);
+    }
+
+    /**
+     * Search to the given level.  Move the best move to the front of the
+     * list, keeping the others in order, so that equally ranked moves keep
+     * their random order from level to level.  Return the best score.
+     */
+    int search (int level)
+    {
+        searcher.setLevel (level);
+
+        bestIndex = 0;
+        bestScore = searcher.scoreMove (
+            moves[0], 0, -Searcher.INFINITY, Searcher.INFINITY);
+        scores[0] = bestScore;
+        exact[0] = true;
+
+        if (pool != null && !lazySmp && count > 2)
+        {
+            searchRest (level);
+        }
+        else
+        {
+            for (int i = 1; i < count; ++i)
+            {
+                scoreMove (searcher, i);
+            }
+        }
+
+        long move = moves[bestIndex];
+        int score = scores[bestIndex];
+        System.arraycopy (moves, 0, moves, 1, bestIndex);
+        System.arraycopy (scores, 0, scores, 1, bestIndex);
+        System.arraycopy (exact, 0, exact, 1, bestIndex);
+        moves[0] = move;
+        scores[0] = score;
+        exact[0] = true;
+
+        return score;
+    }
+
+    //
+    // Show that a move is no better than the best so far, or else find
+    // its score and make it the best.
+    //
+    private void scoreMove (Searcher searcher, int index)
+    {
+        int alpha = getBestScore ();
+        int score = searcher.scoreMove (moves[index], 0, alpha, alpha + 1);
+        boolean better = score > alpha;
+        if (better)
+        {
+            score = searcher.scoreMove (
+                moves[index], 0, alpha, Searcher.INFINITY);
+        }
+        scores[index] = score;
+        exact[index] = better;
+        if (better)
+        {
+            offer (score, index);
+        }
+    }
+
+    private synchronized int getBestScore ()
+    {
+        return bestScore;
+    }
+
+    //
+    // Of equal scores, prefer the move first in the list.
+    //
+    private synchronized void offer (int score, int index)
+    {
+        if (score > bestScore || (score == bestScore && index < bestIndex))
+        {
+            bestScore = score;
+            bestIndex = index;
+        }
+    }
+
+    /**
+     * Start lazy SMP helpers in the pool, one fewer than its parallelism,
+     * since the calling thread also searches.  Each looks ahead level by
+     * level until it reaches 'maxLevel' or is stopped.  Odd-numbered
+     * helpers start one level deeper than the others.
+     */
+    void startHelpers (final int maxLevel)
+    {
+        if (pool == null || !lazySmp || count < 2)
+            return;
+
+        for (int i = 1; i < pool.getParallelism (); ++i)
+        {
+            final Searcher helper = new Searcher (gameState, table);
+            final int firstLevel = i % 2;
+            helper.setRotation (i);
+            helper.setTablebase (tablebase);
+            helper.setEvaluator (evaluator);
+            helper.setDeadline (deadline);
+            addWorker (helper);
+            helpers.add (helper);
+            helperTasks.add (pool.submit (new Runnable ()
+            {
+                public void run ()
+                {
+                    try
+                    {
+                        for (int lev = firstLevel; lev <= maxLevel; ++lev)
+                        {
+                            helper.setLevel (lev);
+                            helper.findBestScore (
+                                0, -Searcher.INFINITY, Searcher.INFINITY);
+                        }
+                    }
+                    catch (SearchAbortedException e)
+                    {
+                    }
+                }
+            }));
+        }
+    }
+
+    /**
+     * Stop the lazy SMP helpers, and wait for them to finish.
+     */
+    void stopHelpers ()
+    {
+        for (Iterator it = helpers.iterator (); it.hasNext (); )
+        {
+            ((Searcher) it.next ()).abort ();
+        }
+        for (Iterator it = helperTasks.iterator (); it.hasNext (); )
+        {
+            try
+            {
+                ((Future) it.next ()).get ();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread ().interrupt ();
+                break;
+            }
+            catch (ExecutionException e)
+            {
+                throw new IllegalStateException (e.getCause ());
+            }
+        }
+        for (Iterator it = helpers.iterator (); it.hasNext (); )
+        {
+            Searcher helper = (Searcher) it.next ();
+            removeWorker (helper);
+            addCounts (helper);
+        }
+        helpers.clear ();
+        helperTasks.clear ();
+    }
+
+    private synchronized void addCounts (Searcher searcher)
+    {
+        searcher.addCounts (counts);
+    }
+
+    //
+    // Search all moves but the first in the pool.
+    //
+    private void searchRest (final int level)
+    {
+        List tasks = new ArrayList ();
+        for (int i = 1; i < count; ++i)
+        {
+            tasks.add (new MoveTask (level, i));
+        }
+
+        pool.invoke (new RecursiveAction ()
+        {
+            protected void compute ()
+            {
+                invokeAll (tasks);
+            }
+        });
+
+        for (Iterator it = tasks.iterator (); it.hasNext (); )
+        {
+            if (((MoveTask) it.next ()).aborted)
+                throw new SearchAbortedException ();
+        }
+    }
+
+    private class MoveTask extends RecursiveAction
+    {
+        private final static long serialVersionUID = 1L;
+
+        private int level;
+        private int index;
+        private boolean aborted;
+
+        MoveTask (int level, int index)
+        {
+            this.level = level;
+            this.index = index;
+        }
+
+        protected void compute ()
+        {
+            Searcher taskSearcher = new Searcher (gameState, table);
+            taskSearcher.setLevel (level);
+            taskSearcher.setDeadline (deadline);
+            taskSearcher.setTablebase (tablebase);
+            taskSearcher.setEvaluator (evaluator);
+            addWorker (taskSearcher);
+            try
+            {
+                scoreMove (taskSearcher, index);
+            }
+            catch (SearchAbortedException e)
+            {
+                aborted = true;
+            }
+            removeWorker (taskSearcher);
+            addCounts (taskSearcher);
+        }
+    }
+}
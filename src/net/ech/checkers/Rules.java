@@ -37,270 +37,430 @@ public class Rules implements Constants
         if (moveList.isEmpty ())
             return null;
 
-        return scramble ((Move[]) moveList.toArray (new Move [moveList.size ()]));
+        return (Move[]) moveList.toArray (new Move [moveList.size ()]);
     }
 
-    //
-    // Scramble the list of moves so that the auto-player selects among
-    // equally ranked plays randomly.
-    //
-    private static Move[] scramble (Move[] array)
+    /**
+     * Write all the legal moves for the given player into a caller-owned
+     * buffer, packed as described in class PackedMove, starting at index
+     * 'start'.  Return the index following the last move written; if it
+     * equals 'start', the player cannot move.  Allocates nothing, so that
+     * a search may reuse one buffer per ply.
+     */
+    public static int generateMoves (
+        BoardState board, int player, long[] buffer, int start)
+    {
+        return generateMoves (
+            board.getOccupiedBits (), board.getSouthBits (),
+            board.getKingBits (), player, buffer, start);
+    }
+
+    static int generateMoves (
+        int occupied,
+        int south,
+        int kings,
+        int player,
+        long[] buffer,
+        int start)
     {
-        for (int i = array.length; --i >= 0; )
+        int end = generateHops (occupied, south, kings, player, buffer, start);
+        if (end == start)
         {
-            int selected = (int) (Math.random () * (i + 1));
-            Move temp = array[i];
-            array[i] = array[selected];
-            array[selected] = temp;
+            // Player can slide a piece only if there are no legal hops.
+            end = generateNonHops (
+                occupied, south, kings, player, buffer, start);
         }
-
-        return array;
+        return end;
     }
 
     //
-    // Add all the legal hop moves to the list.
+    // Write all the legal hop moves to the buffer.
     //
-    private static void findLegalHops (
-        BoardState board,
-        int activePlayer,
-        List moveList)
+    static int generateHops (
+        int occupied,
+        int south,
+        int kings,
+        int player,
+        long[] buffer,
+        int end)
     {
-        for (int row = 0; row < SQUARES_ON_SIDE; ++row)
+        int jumpers = Bitboard.jumpers (occupied, south, kings, player);
+        if (jumpers != 0)
         {
-            for (int column = ((row % 2) == 0) ? 0 : 1;
-                column < SQUARES_ON_SIDE; column += 2)
+            int opponents = Bitboard.opponents (occupied, south, player);
+            while (jumpers != 0)
             {
-                int sqIndex = Position.toSquareIndex (row, column);
-                if (board.getPlayerAt (sqIndex) == activePlayer)
-                {
-                    HopFinder hopFinder =
-                        new HopFinder (board, sqIndex, moveList);
-                    hopFinder.find ();
-                }
+                int origin = jumpers & -jumpers;
+                jumpers ^= origin;
+                end = extendHops (
+                    occupied & ~origin, opponents, origin,
+                    (kings & origin) != 0, player,
+                    Integer.numberOfTrailingZeros (origin), 0, 0,
+                    buffer, end);
             }
         }
+        return end;
     }
 
-    private static class HopFinder
+    //
+    // Continue a hop that has reached square 'from' after 'hops' hops.
+    // If it can go no further, it is complete; write it to the buffer.
+    //
+    private static int extendHops (
+        int occupied,
+        int opponents,
+        int from,
+        boolean isKing,
+        int player,
+        int originBit,
+        int hops,
+        int captured,
+        long[] buffer,
+        int end)
     {
-        private BoardState board;
-        private int origin;
-        private Hop prevHop;
-        private List moveList;
-        private int count;
+        int start = end;
 
-        HopFinder (BoardState board, int origin, List moveList)
+        if (isKing || player == SOUTH)
+        {
+            int nw = Bitboard.northwest (from);
+            end = nextHop (occupied, opponents, nw, Bitboard.northwest (nw),
+                isKing, player, originBit, hops, captured, buffer, end);
+            int ne = Bitboard.northeast (from);
+            end = nextHop (occupied, opponents, ne, Bitboard.northeast (ne),
+                isKing, player, originBit, hops, captured, buffer, end);
+        }
+        if (isKing || player == NORTH)
         {
-            this.board = board;
-            this.origin = origin;
-            this.moveList = moveList;
+            int sw = Bitboard.southwest (from);
+            end = nextHop (occupied, opponents, sw, Bitboard.southwest (sw),
+                isKing, player, originBit, hops, captured, buffer, end);
+            int se = Bitboard.southeast (from);
+            end = nextHop (occupied, opponents, se, Bitboard.southeast (se),
+                isKing, player, originBit, hops, captured, buffer, end);
         }
 
-        HopFinder (BoardState board, int origin, Hop prevHop, List moveList)
+        if (end == start && hops > 0)
         {
-            this (board, origin, moveList);
-            this.prevHop = prevHop;
+            buffer[end++] = PackedMove.pack (originBit,
+                Integer.numberOfTrailingZeros (from), hops, captured);
         }
+        return end;
+    }
 
-        void find ()
+    private static int nextHop (
+        int occupied,
+        int opponents,
+        int hopped,
+        int target,
+        boolean isKing,
+        int player,
+        int originBit,
+        int hops,
+        int captured,
+        long[] buffer,
+        int end)
+    {
+        if ((hopped & opponents) == 0 || target == 0 ||
+            (target & occupied) != 0)
         {
-            int player = board.getPlayerAt (origin);
-            boolean isKing = board.isKingAt (origin);
+            return end;
+        }
+        return extendHops (
+            occupied & ~hopped, opponents & ~hopped, target, isKing, player,
+            originBit, hops + 1, captured | hopped, buffer, end);
+    }
 
-            if (isKing || player == SOUTH)
+    //
+    // Write all the legal sliding moves to the buffer.
+    //
+    static int generateNonHops (
+        int occupied,
+        int south,
+        int kings,
+        int player,
+        long[] buffer,
+        int end)
+    {
+        int pieces = Bitboard.pieces (occupied, south, player);
+        int empty = ~occupied;
+
+        int up = Bitboard.northMovers (pieces, kings, player);
+        if (up != 0)
+        {
+            for (int targets = Bitboard.northwest (up) & empty; targets != 0; )
             {
-                checkHop (NORTHWEST);
-                checkHop (NORTHEAST);
+                int target = targets & -targets;
+                targets ^= target;
+                buffer[end++] = packNonHop (Bitboard.southeast (target), target);
             }
-            if (isKing || player == NORTH)
+            for (int targets = Bitboard.northeast (up) & empty; targets != 0; )
             {
-                checkHop (SOUTHWEST);
-                checkHop (SOUTHEAST);
+                int target = targets & -targets;
+                targets ^= target;
+                buffer[end++] = packNonHop (Bitboard.southwest (target), target);
             }
         }
 
-        private void checkHop (int direction)
+        int down = Bitboard.southMovers (pieces, kings, player);
+        if (down != 0)
         {
-            int target = Rules.checkHop (board, origin, direction);
-            if (target >= 0)
+            for (int targets = Bitboard.southwest (down) & empty; targets != 0; )
             {
-                // Check recursively for further hops.
-                // As long as further hops are possible, must keep hopping.
-                Hop thisHop = new Hop (origin, target);
-                Hop wholeHop = 
-                    prevHop == null
-                        ? thisHop
-                        : prevHop.extend (target);
-                HopFinder subFinder =
-                    new HopFinder (
-                        board.executeMove (thisHop),
-                        target, wholeHop, moveList);
-                subFinder.find ();
-                if (subFinder.getCount () == 0)
-                {
-                    moveList.add (wholeHop);
-                    ++count;
-                }
+                int target = targets & -targets;
+                targets ^= target;
+                buffer[end++] = packNonHop (Bitboard.northeast (target), target);
+            }
+            for (int targets = Bitboard.southeast (down) & empty; targets != 0; )
+            {
+                int target = targets & -targets;
+                targets ^= target;
+                buffer[end++] = packNonHop (Bitboard.northwest (target), target);
             }
         }
 
-        public int getCount ()
+        return end;
+    }
+
+    private static long packNonHop (int origin, int target)
+    {
+        return PackedMove.pack (
+            Integer.numberOfTrailingZeros (origin),
+            Integer.numberOfTrailingZeros (target), 0, 0);
+    }
+
+    /**
+     * Convert a packed move, legal in the given board, to a Move.
+     * The hop path is traced again from the captured squares.
+     */
+    public static Move toMove (BoardState board, long move)
+    {
+        int origin = PackedMove.getOrigin (move);
+        if (!PackedMove.isHop (move))
+            return new Move (origin, PackedMove.getTarget (move));
+
+        int[] path = new int [MAX_HOP_LENGTH + 1];
+        path[0] = origin;
+        int from = PackedMove.getOriginMask (move);
+        if (!tracePath (
+            board.getOccupiedBits () & ~from, PackedMove.getCaptured (move),
+            from, PackedMove.getTargetMask (move), board.isKingAt (origin),
+            board.getPlayerAt (origin), path, 1))
         {
-            return count;
+            throw new IllegalArgumentException (PackedMove.toString (move));
         }
+        return new Hop (path, PackedMove.getHopCount (move) + 1);
     }
 
-    private static int checkHop (BoardState board, int origin, int direction)
+    private static boolean tracePath (
+        int occupied,
+        int remaining,
+        int from,
+        int target,
+        boolean isKing,
+        int player,
+        int[] path,
+        int length)
     {
-        int intermed = adjacentSquare (origin, direction);
-        if (intermed >= 0)
+        if (remaining == 0)
+            return from == target;
+
+        for (int direction = Bitboard.NORTHWEST;
+            direction <= Bitboard.SOUTHEAST; ++direction)
         {
-            int hopper = board.getPlayerAt (origin);
-            int hoppable = hopper == NORTH ? SOUTH : NORTH;
-            if (board.getPlayerAt (intermed) == hoppable)
+            boolean north = direction == Bitboard.NORTHWEST ||
+                direction == Bitboard.NORTHEAST;
+            if (!isKing && north != (player == SOUTH))
+                continue;
+
+            int hopped = Bitboard.step (from, direction);
+            int landing = Bitboard.step (hopped, direction);
+            if ((hopped & remaining) != 0 && landing != 0 &&
+                (landing & occupied) == 0)
             {
-                int target = adjacentSquare (intermed, direction);
-                if (target >= 0 &&
-                    board.getPlayerAt (target) == NULL_PLAYER)
+                path[length] = Bitboard.lowestSquare (landing);
+                if (tracePath (occupied & ~hopped, remaining & ~hopped,
+                    landing, target, isKing, player, path, length + 1))
                 {
-                    return target;
+                    return true;
                 }
             }
         }
-        return -1;
+        return false;
     }
 
-    private static void findLegalNonHops (
+    //
+    // Add all the legal hop moves to the list.
+    //
+    private static void findLegalHops (
         BoardState board,
         int activePlayer,
         List moveList)
     {
-        for (int row = 0; row < SQUARES_ON_SIDE; ++row)
+        int occupied = board.getOccupiedBits ();
+        int south = board.getSouthBits ();
+        int kings = board.getKingBits ();
+
+        int jumpers = Bitboard.jumpers (occupied, south, kings, activePlayer);
+        if (jumpers == 0)
+            return;
+
+        int opponents = Bitboard.opponents (occupied, south, activePlayer);
+        int[] path = new int [MAX_HOP_LENGTH + 1];
+
+        while (jumpers != 0)
         {
-            for (int column = ((row % 2) == 0) ? 0 : 1;
-                column < SQUARES_ON_SIDE; column += 2)
-            {
-                int sqIndex = Position.toSquareIndex (row, column);
-                if (board.getPlayerAt (sqIndex) == activePlayer)
-                {
-                    boolean isKing = board.isKingAt (sqIndex);
-                    if (isKing || activePlayer == SOUTH)
-                    {
-                        checkNonHop (board, sqIndex, NORTHWEST, moveList);
-                        checkNonHop (board, sqIndex, NORTHEAST, moveList);
-                    }
-                    if (isKing || activePlayer == 2)
-                    {
-                        checkNonHop (board, sqIndex, SOUTHWEST, moveList);
-                        checkNonHop (board, sqIndex, SOUTHEAST, moveList);
-                    }
-                }
-            }
+            int origin = jumpers & -jumpers;
+            jumpers ^= origin;
+            path[0] = Bitboard.lowestSquare (origin);
+
+            // The hopping piece leaves its origin square for the duration.
+            findHops (occupied & ~origin, opponents, origin,
+                (kings & origin) != 0, activePlayer, path, 1, moveList);
         }
     }
 
-    private static void checkNonHop (
-        BoardState board, int origin, int direction, List moveList)
+    //
+    // Look for hops from the given square, continuing the path so far.
+    // Captured pieces come off the board as they are hopped, so that no
+    // piece may be hopped twice.  The hopping piece is not kinged mid-hop.
+    // Return the number of hops added to the list.
+    //
+    private static int findHops (
+        int occupied,
+        int opponents,
+        int from,
+        boolean isKing,
+        int player,
+        int[] path,
+        int length,
+        List moveList)
     {
-        Move move = checkNonHop (board, origin, direction);
-        if (move != null)
+        int count = 0;
+
+        if (isKing || player == SOUTH)
+        {
+            int nw = Bitboard.northwest (from);
+            count += checkHop (occupied, opponents, nw,
+                Bitboard.northwest (nw), isKing, player, path, length, moveList);
+            int ne = Bitboard.northeast (from);
+            count += checkHop (occupied, opponents, ne,
+                Bitboard.northeast (ne), isKing, player, path, length, moveList);
+        }
+        if (isKing || player == NORTH)
         {
-            moveList.add (move);
+            int sw = Bitboard.southwest (from);
+            count += checkHop (occupied, opponents, sw,
+                Bitboard.southwest (sw), isKing, player, path, length, moveList);
+            int se = Bitboard.southeast (from);
+            count += checkHop (occupied, opponents, se,
+                Bitboard.southeast (se), isKing, player, path, length, moveList);
         }
+
+        return count;
     }
 
-    private static Move checkNonHop (
-        BoardState board, int origin, int direction)
+    private static int checkHop (
+        int occupied,
+        int opponents,
+        int hopped,
+        int target,
+        boolean isKing,
+        int player,
+        int[] path,
+        int length,
+        List moveList)
     {
-        int target = adjacentSquare (origin, direction);
-        if (target >= 0 && board.getPlayerAt (target) == 0)
+        if ((hopped & opponents) == 0 || target == 0 ||
+            (target & occupied) != 0)
         {
-            return new Move (origin, target);
+            return 0;
         }
-        return null;
-    }
 
-    private final static int NORTHWEST = 0;
-    private final static int NORTHEAST = 1;
-    private final static int SOUTHWEST = 2;
-    private final static int SOUTHEAST = 3;
+        path[length] = Bitboard.lowestSquare (target);
 
-    private static int adjacentSquare (int originSqIndex, int direction)
+        // Check recursively for further hops.
+        // As long as further hops are possible, must keep hopping.
+        int count = findHops (
+            occupied & ~hopped, opponents & ~hopped, target,
+            isKing, player, path, length + 1, moveList);
+        if (count == 0)
+        {
+            moveList.add (new Hop (path, length + 1));
+            count = 1;
+        }
+        return count;
+    }
+
+    //
+    // Add all the legal sliding moves to the list.
+    //
+    private static void findLegalNonHops (
+        BoardState board,
+        int activePlayer,
+        List moveList)
     {
-        int row = Position.squareIndexToRow (originSqIndex);
-        int column = Position.squareIndexToColumn (originSqIndex);
+        int occupied = board.getOccupiedBits ();
+        int south = board.getSouthBits ();
+        int kings = board.getKingBits ();
+        int pieces = Bitboard.pieces (occupied, south, activePlayer);
+        int empty = ~occupied;
 
-        switch (direction)
+        int up = Bitboard.northMovers (pieces, kings, activePlayer);
+        if (up != 0)
         {
-        case NORTHWEST:
-        case NORTHEAST:
-            row -= 1;
-            if (row < 0)
-                return -1;
-            break;
-        case SOUTHWEST:
-        case SOUTHEAST:
-            row += 1;
-            if (row >= SQUARES_ON_SIDE)
-                return -1;
+            for (int targets = Bitboard.northwest (up) & empty; targets != 0; )
+            {
+                int target = targets & -targets;
+                targets ^= target;
+                addNonHop (Bitboard.southeast (target), target, moveList);
+            }
+            for (int targets = Bitboard.northeast (up) & empty; targets != 0; )
+            {
+                int target = targets & -targets;
+                targets ^= target;
+                addNonHop (Bitboard.southwest (target), target, moveList);
+            }
         }
 
-        switch (direction)
+        int down = Bitboard.southMovers (pieces, kings, activePlayer);
+        if (down != 0)
         {
-        case NORTHWEST:
-        case SOUTHWEST:
-            column -= 1;
-            if (column < 0)
-                return -1;
-            break;
-        case NORTHEAST:
-        case SOUTHEAST:
-            column += 1;
-            if (column >= SQUARES_ON_SIDE)
-                return -1;
+            for (int targets = Bitboard.southwest (down) & empty; targets != 0; )
+            {
+                int target = targets & -targets;
+                targets ^= target;
+                addNonHop (Bitboard.northeast (target), target, moveList);
+            }
+            for (int targets = Bitboard.southeast (down) & empty; targets != 0; )
+            {
+                int target = targets & -targets;
+                targets ^= target;
+                addNonHop (Bitboard.northwest (target), target, moveList);
+            }
         }
+    }
 
-        return Position.toSquareIndex (row, column);
+    private static void addNonHop (int origin, int target, List moveList)
+    {
+        moveList.add (new Move (
+            Bitboard.lowestSquare (origin), Bitboard.lowestSquare (target)));
     }
 
+    //
+    // The longest possible hop: each of the opponent's pieces hopped once.
+    //
+    private final static int MAX_HOP_LENGTH = STARTING_PIECES_PER_PLAYER;
+
     /**
      * Return true if the player has at least one legal move.
      */
     public static boolean canPlay (BoardState board, int player)
     {
-        for (int row = 0; row < SQUARES_ON_SIDE; ++row)
-        {
-            for (int column = ((row % 2) == 0) ? 0 : 1;
-                column < SQUARES_ON_SIDE; column += 2)
-            {
-                int sqIndex = Position.toSquareIndex (row, column);
-                if (board.getPlayerAt (sqIndex) == player)
-                {
-                    boolean isKing = board.isKingAt (sqIndex);
-
-                    if (isKing || player == SOUTH)
-                    {
-                        if (checkNonHop (board, sqIndex, NORTHWEST) != null ||
-                            checkNonHop (board, sqIndex, NORTHEAST) != null ||
-                            checkHop (board, sqIndex, NORTHWEST) >= 0 ||
-                            checkHop (board, sqIndex, NORTHEAST) >= 0)
-                        {
-                            return true;
-                        }
-                    }
-                    if (isKing || player == NORTH)
-                    {
-                        if (checkNonHop (board, sqIndex, SOUTHWEST) != null ||
-                            checkNonHop (board, sqIndex, SOUTHEAST) != null ||
-                            checkHop (board, sqIndex, SOUTHWEST) >= 0 ||
-                            checkHop (board, sqIndex, SOUTHEAST) >= 0)
-                        {
-                            return true;
-                        }
-                    }
-                }
-            }
-        }
-        return false;
+        int occupied = board.getOccupiedBits ();
+        int south = board.getSouthBits ();
+        int kings = board.getKingBits ();
+        return
+            Bitboard.movers (occupied, south, kings, player) != 0 ||
+            Bitboard.jumpers (occupied, south, kings, player) != 0;
     }
 }
@@ -0,0 +1,20 @@
+//
+// SearchAbortedException.java
+//
+
+package net.ech.checkers;
+
+/**
+ * Thrown from deep within a search that must stop now.  The search's
+ * board and buffers are left in an undefined state, and its results so far
+ * should be discarded.
+ */
+class SearchAbortedException extends RuntimeException
+{
+    private final static long serialVersionUID = 1L;
+
+    SearchAbortedException ()
+    {
+        super ("search aborted");
+    }
+}
@@ -0,0 +1,281 @@
+//
+// SearchBoard.java
+//
+
+package net.ech.checkers;
+
+//
+// A mutable board for lookahead.  Moves are postulated with makeMove and
+// taken back with unmakeMove, by XOR-ing deltas into the three board masks,
+// so that a search allocates nothing per node.  Unlike GameState, the
+// active player always alternates; a player who cannot move has lost, and
+// it is up to the search to notice (see canPlay).
+//
+// The board also keeps the sum of the values of its pieces, as given by an
+// Evaluator, adjusting it by the pieces that a move shifts, crowns or
+// captures, so that evaluating a leaf need not visit every piece.
+//
+class SearchBoard implements Constants
+{
+    /**
+     * The deepest stack of postulated moves a search board supports.
+     */
+    final static int MAX_PLY = 128;
+
+    // Squares on which a man is crowned.
+    private final static int SOUTH_KING_ROW = 0xf0000000;
+    private final static int NORTH_KING_ROW = 0x0000000f;
+
+    private int occupiedBits;
+    private int southBits;
+    private int kingBits;
+    private int activePlayer;
+    private long hashKey;
+
+    // Piece values by kind and bit, and the sum of those on the board.
+    private int[] pieceValues = new int [Evaluator.PIECE_KINDS * ON_SQUARES];
+    private int pieceSum;
+
+    // Deltas of moves made, three per ply, for unmakeMove.
+    private int[] undo = new int [MAX_PLY * 3];
+    private long[] hashUndo = new long [MAX_PLY];
+    private int[] pieceSumUndo = new int [MAX_PLY];
+    private int ply;
+
+    SearchBoard (GameState gameState)
+    {
+        BoardState board = gameState.getBoardState ();
+        occupiedBits = board.getOccupiedBits ();
+        southBits = board.getSouthBits ();
+        kingBits = board.getKingBits ();
+        activePlayer = gameState.getActivePlayer ();
+        hashKey = gameState.getHashKey ();
+    }
+
+    /**
+     * Keep the sum of piece values given by an evaluator.
+     */
+    void setEvaluator (Evaluator evaluator)
+    {
+        for (int kind = 0; kind < Evaluator.PIECE_KINDS; ++kind)
+        {
+            for (int bit = 0; bit < ON_SQUARES; ++bit)
+            {
+                pieceValues[kind * ON_SQUARES + bit] =
+                    evaluator.getPieceValue (kind, bit);
+            }
+        }
+        pieceSum = sumPieceValues ();
+    }
+
+    private int sumPieceValues ()
+    {
+        int sum = 0;
+        for (int bits = occupiedBits; bits != 0; bits &= bits - 1)
+        {
+            int bit = Integer.numberOfTrailingZeros (bits);
+            sum += pieceValues[kindAt (1 << bit) * ON_SQUARES + bit];
+        }
+        return sum;
+    }
+
+    //
+    // Return the kind of the piece on a square, as Evaluator numbers them.
+    //
+    private int kindAt (int mask)
+    {
+        return ((southBits & mask) != 0
+            ? Evaluator.SOUTH_MAN
+            : Evaluator.NORTH_MAN) + ((kingBits & mask) != 0 ? 1 : 0);
+    }
+
+    SearchBoard (int occupiedBits, int southBits, int kingBits,
+        int activePlayer)
+    {
+        setPosition (occupiedBits, southBits, kingBits, activePlayer);
+    }
+
+    /**
+     * Set up a position given as board masks, forgetting any moves made.
+     */
+    void setPosition (int occupiedBits, int southBits, int kingBits,
+        int activePlayer)
+    {
+        this.occupiedBits = occupiedBits;
+        this.southBits = southBits;
+        this.kingBits = kingBits;
+        this.activePlayer = activePlayer;
+        this.hashKey = Zobrist.boardKey (occupiedBits, southBits, kingBits) ^
+            Zobrist.playerKey (activePlayer);
+        this.pieceSum = sumPieceValues ();
+        this.ply = 0;
+    }
+
+    int getActivePlayer ()
+    {
+        return activePlayer;
+    }
+
+    int getOccupiedBits ()
+    {
+        return occupiedBits;
+    }
+
+    int getSouthBits ()
+    {
+        return southBits;
+    }
+
+    int getKingBits ()
+    {
+        return kingBits;
+    }
+
+    /**
+     * Return the Zobrist hash key of the position, equal to that of the
+     * corresponding GameState.
+     */
+    long getHashKey ()
+    {
+        return hashKey;
+    }
+
+    /**
+     * Return the sum of the values of the pieces on the board.
+     */
+    int getPieceSum ()
+    {
+        return pieceSum;
+    }
+
+    /**
+     * Write the active player's legal moves to the buffer.
+     * See Rules.generateMoves.
+     */
+    int generateMoves (long[] buffer, int start)
+    {
+        return Rules.generateMoves (
+            occupiedBits, southBits, kingBits, activePlayer, buffer, start);
+    }
+
+    /**
+     * Return true if the active player has at least one legal move.
+     */
+    boolean canPlay ()
+    {
+        return
+            Bitboard.movers (
+                occupiedBits, southBits, kingBits, activePlayer) != 0 ||
+            Bitboard.jumpers (
+                occupiedBits, southBits, kingBits, activePlayer) != 0;
+    }
+
+    /**
+     * Return true if the active player must capture.
+     */
+    boolean mustCapture ()
+    {
+        return Bitboard.jumpers (
+            occupiedBits, southBits, kingBits, activePlayer) != 0;
+    }
+
+    int getPieceCount (int player)
+    {
+        return Integer.bitCount (
+            Bitboard.pieces (occupiedBits, southBits, player));
+    }
+
+    int getKingCount (int player)
+    {
+        return Integer.bitCount (
+            Bitboard.pieces (occupiedBits, southBits, player) & kingBits);
+    }
+
+    /**
+     * Postulate a legal move of the active player, including kinging.
+     */
+    void makeMove (long move)
+    {
+        int origin = PackedMove.getOriginMask (move);
+        int target = PackedMove.getTargetMask (move);
+        int captured = PackedMove.getCaptured (move);
+
+        // A king may hop its way back to its origin square.
+        int path = origin ^ target;
+
+        int occupiedDelta = path | captured;
+        int southDelta;
+        int kingDelta = captured & kingBits;
+
+        if (activePlayer == SOUTH)
+        {
+            southDelta = path;
+            if ((kingBits & origin) != 0)
+                kingDelta |= path;
+            else if ((target & SOUTH_KING_ROW) != 0)
+                kingDelta |= target;
+        }
+        else
+        {
+            southDelta = captured;
+            if ((kingBits & origin) != 0)
+                kingDelta |= path;
+            else if ((target & NORTH_KING_ROW) != 0)
+                kingDelta |= target;
+        }
+
+        // Take the moving and captured pieces out of the hash key and the
+        // piece sum, and put the moving piece back in at its target.
+        long hashDelta = Zobrist.NORTH_TO_MOVE ^
+            Zobrist.squaresKey (origin | captured, southBits, kingBits);
+        pieceSumUndo[ply] = pieceSum;
+        int originBit = Integer.numberOfTrailingZeros (origin);
+        pieceSum -= pieceValues[kindAt (origin) * ON_SQUARES + originBit];
+        for (int bits = captured; bits != 0; bits &= bits - 1)
+        {
+            int bit = Integer.numberOfTrailingZeros (bits);
+            pieceSum -= pieceValues[kindAt (1 << bit) * ON_SQUARES + bit];
+        }
+
+        occupiedBits ^= occupiedDelta;
+        southBits ^= southDelta;
+        kingBits ^= kingDelta;
+        activePlayer = activePlayer == SOUTH ? NORTH : SOUTH;
+
+        hashDelta ^= Zobrist.squaresKey (target, southBits, kingBits);
+        hashKey ^= hashDelta;
+        int targetBit = Integer.numberOfTrailingZeros (target);
+        pieceSum += pieceValues[kindAt (target) * ON_SQUARES + targetBit];
+
+        hashUndo[ply] = hashDelta;
+        int top = ply++ * 3;
+        undo[top] = occupiedDelta;
+        undo[top + 1] = southDelta;
+        undo[top + 2] = kingDelta;
+    }
+
+    /**
+     * Take back all the moves made.
+     */
+    void unmakeMoves ()
+    {
+        while (ply > 0)
+        {
+            unmakeMove ();
+        }
+    }
+
+    /**
+     * Take back the last move made.
+     */
+    void unmakeMove ()
+    {
+        int top = --ply * 3;
+        occupiedBits ^= undo[top];
+        southBits ^= undo[top + 1];
+        kingBits ^= undo[top + 2];
+        hashKey ^= hashUndo[ply];
+        pieceSum = pieceSumUndo[ply];
+        activePlayer = activePlayer == SOUTH ? NORTH : SOUTH;
+    }
+}
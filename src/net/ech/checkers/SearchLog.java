@@ -0,0 +1,377 @@
+//
+// SearchLog.java
+//
+
+package net.ech.checkers;
+
+import java.io.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+/**
+ * Logs what AutoPlayer searched and chose, as JSON lines, without making
+ * the search wait on the disk.  The player only queues a few numbers per
+ * event in a lock-free ring; a thread of the log's own turns them into
+ * lines and writes them, in batches, flushing whenever it runs out of
+ * events.  If the ring is full, the event is dropped rather than the
+ * player held up, and the writer logs how many were dropped once it has
+ * caught up.
+ *
+ * Each line is a JSON object whose "event" is one of:
+ *
+ *     book       a move taken from the opening book
+ *     level      a level of lookahead completed: the best move, its
+ *                score, and every root move with its score, exact or an
+ *                upper bound
+ *     move       the move chosen, with its score, depth, nodes, time and
+ *                table hit rates
+ *     dropped    the number of events dropped for want of room
+ *
+ * All but "dropped" also give the time, in milliseconds since the epoch,
+ * the position's hash key, and the player to move.  Moves are written as
+ * the squares they visit (see BoardDiagram.formatMove), and scores are from
+ * the point of view of the player to move.
+ *
+ * The principal variation of each level and move may be logged too (see
+ * setVariations), but is not by default: it is read out of the
+ * transposition table on the searching thread, which must replay and
+ * check every move of it, while the next search waits.
+ */
+public class SearchLog implements Constants
+{
+    public final static int DEFAULT_CAPACITY = 1024;
+
+    // Events of each kind.
+    private final static int BOOK = 0;
+    private final static int LEVEL = 1;
+    private final static int MOVE = 2;
+    private final static String[] EVENT_NAMES = { "book", "level", "move" };
+
+    // The most moves of a principal variation to log.
+    private final static int MAX_VARIATION = 32;
+
+    // How long the writer sleeps when there is nothing to write.
+    private final static long IDLE_NANOS = 10000000;
+
+    private Writer writer;
+    private RingBuffer ring;
+    private AtomicLong dropped = new AtomicLong ();
+    private Thread thread;
+    private volatile boolean closing;
+    private volatile boolean variations;
+    private IOException failure;
+
+    /**
+     * Append to a log file.
+     */
+    public SearchLog (File file)
+        throws IOException
+    {
+        this (new OutputStreamWriter (
+            new FileOutputStream (file, true), "UTF-8"), DEFAULT_CAPACITY);
+    }
+
+    public SearchLog (Writer writer)
+    {
+        this (writer, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Log to a writer, with room for the given number of events waiting
+     * to be written.
+     */
+    public SearchLog (Writer writer, int capacity)
+    {
+        this.writer = new BufferedWriter (writer);
+        this.ring = new RingBuffer (capacity);
+        this.thread = new Thread (new Runnable ()
+        {
+            public void run ()
+            {
+                drain ();
+            }
+        }, "search-log");
+        thread.setDaemon (true);
+        thread.start ();
+    }
+
+    /**
+     * Choose whether to log the principal variation ("pv") of each level
+     * and move, at some cost to the search.
+     */
+    public void setVariations (boolean variations)
+    {
+        this.variations = variations;
+    }
+
+    /**
+     * Return the number of events dropped so far.
+     */
+    public long getDropped ()
+    {
+        return dropped.get ();
+    }
+
+    /**
+     * Write the events queued, and close the writer.
+     */
+    public void close ()
+        throws IOException
+    {
+        closing = true;
+        LockSupport.unpark (thread);
+        try
+        {
+            thread.join ();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread ().interrupt ();
+        }
+        writer.close ();
+        if (failure != null)
+            throw failure;
+    }
+
+    //
+    // One event: what the player knew at the time, kept as numbers.
+    //
+    private static class Event
+    {
+        int kind;
+        long time;
+        GameState gameState;
+        long move;
+        int score;
+        int level;
+        long[] variation;
+        long[] moves;
+        int[] scores;
+        boolean[] exact;
+        MoveStats stats;
+        long tablebaseHits;
+        long tablebaseMisses;
+    }
+
+    /**
+     * Log a move taken from the book.
+     */
+    void logBook (GameState gameState, Move move)
+    {
+        Event event = newEvent (BOOK, gameState);
+        event.move = PackedMove.pack (move);
+        offer (event);
+    }
+
+    /**
+     * Log a level of a search completed.
+     */
+    void logLevel (GameState gameState, RootSearch search, int level)
+    {
+        Event event = newEvent (LEVEL, gameState);
+        int count = search.getMoveCount ();
+        event.level = level;
+        event.move = search.getMove (0);
+        event.score = search.getScore (0);
+        if (variations)
+            event.variation = getVariation (search, level);
+        event.moves = new long [count];
+        event.scores = new int [count];
+        event.exact = new boolean [count];
+        for (int i = 0; i < count; ++i)
+        {
+            event.moves[i] = search.getMove (i);
+            event.scores[i] = search.getScore (i);
+            event.exact[i] = search.isExact (i);
+        }
+        offer (event);
+    }
+
+    /**
+     * Log the move chosen by a search, and how it was chosen.
+     */
+    void logMove (GameState gameState, RootSearch search, MoveStats stats,
+        Tablebase tablebase)
+    {
+        Event event = newEvent (MOVE, gameState);
+        event.move = search.getMove (0);
+        event.stats = stats;
+        if (stats.getLevel () >= 0)
+        {
+            event.score = search.getScore (0);
+            if (variations)
+                event.variation = getVariation (search, stats.getLevel ());
+        }
+        if (tablebase != null)
+        {
+            event.tablebaseHits = tablebase.getCacheHits ();
+            event.tablebaseMisses = tablebase.getCacheMisses ();
+        }
+        offer (event);
+    }
+
+    private static Event newEvent (int kind, GameState gameState)
+    {
+        Event event = new Event ();
+        event.kind = kind;
+        event.time = System.currentTimeMillis ();
+        event.gameState = new GameState (gameState);
+        return event;
+    }
+
+    private static long[] getVariation (RootSearch search, int level)
+    {
+        long[] line = new long [Math.min (level + 1, MAX_VARIATION)];
+        int length = search.getPrincipalVariation (line);
+        long[] variation = new long [length];
+        System.arraycopy (line, 0, variation, 0, length);
+        return variation;
+    }
+
+    private void offer (Event event)
+    {
+        if (closing || !ring.offer (event))
+            dropped.incrementAndGet ();
+    }
+
+    //
+    // The writer thread: write events until closed, flushing when there
+    // are none.
+    //
+    private void drain ()
+    {
+        long reported = 0;
+        boolean unflushed = false;
+        StringBuffer buf = new StringBuffer ();
+        try
+        {
+            for (;;)
+            {
+                boolean done = closing;
+                Event event = (Event) ring.poll ();
+                if (event == null)
+                {
+                    long count = dropped.get ();
+                    if (count != reported)
+                    {
+                        writer.write ("{\"event\":\"dropped\",\"count\":" +
+                            (count - reported) + "}\n");
+                        reported = count;
+                        unflushed = true;
+                    }
+                    if (unflushed)
+                    {
+                        writer.flush ();
+                        unflushed = false;
+                    }
+                    if (done && ring.isEmpty ())
+                        return;
+                    LockSupport.parkNanos (IDLE_NANOS);
+                    continue;
+                }
+
+                buf.setLength (0);
+                format (event, buf);
+                buf.append ('\n');
+                writer.write (buf.toString ());
+                unflushed = true;
+            }
+        }
+        catch (IOException e)
+        {
+            // Keep the first failure for close, and stop logging.
+            failure = e;
+            closing = true;
+        }
+    }
+
+    private static void format (Event event, StringBuffer buf)
+    {
+        GameState gameState = event.gameState;
+        buf.append ("{\"event\":\"").append (EVENT_NAMES[event.kind]);
+        buf.append ("\",\"time\":").append (event.time);
+        buf.append (",\"key\":\"");
+        buf.append (Long.toHexString (gameState.getHashKey ()));
+        buf.append ("\",\"player\":\"");
+        buf.append (gameState.getActivePlayer () == SOUTH ? "SOUTH" : "NORTH");
+        buf.append ("\",\"move\":");
+        appendMove (buf, gameState, event.move);
+
+        if (event.kind == LEVEL)
+        {
+            buf.append (",\"level\":").append (event.level);
+            buf.append (",\"score\":").append (event.score);
+            if (event.variation != null)
+                appendVariation (buf, gameState, event.variation);
+            buf.append (",\"moves\":[");
+            for (int i = 0; i < event.moves.length; ++i)
+            {
+                if (i > 0)
+                    buf.append (',');
+                buf.append ("{\"move\":");
+                appendMove (buf, gameState, event.moves[i]);
+                buf.append (",\"score\":").append (event.scores[i]);
+                buf.append (",\"exact\":").append (event.exact[i]);
+                buf.append ('}');
+            }
+            buf.append (']');
+        }
+        else if (event.kind == MOVE)
+        {
+            MoveStats stats = event.stats;
+            if (stats.getLevel () >= 0)
+            {
+                buf.append (",\"score\":").append (event.score);
+                if (event.variation != null)
+                    appendVariation (buf, gameState, event.variation);
+            }
+            buf.append (",\"choices\":").append (stats.getMoveCount ());
+            buf.append (",\"depth\":").append (stats.getDepth ());
+            buf.append (",\"selectiveDepth\":");
+            buf.append (stats.getSelectiveDepth ());
+            buf.append (",\"nodes\":").append (stats.getNodes ());
+            buf.append (",\"nanos\":").append (stats.getNanos ());
+            buf.append (",\"cutoffs\":").append (stats.getCutoffs ());
+            buf.append (",\"tableProbes\":").append (stats.getTableProbes ());
+            buf.append (",\"tableHits\":").append (stats.getTableHits ());
+            if (event.tablebaseHits != 0 || event.tablebaseMisses != 0)
+            {
+                buf.append (",\"tablebaseCacheHits\":");
+                buf.append (event.tablebaseHits);
+                buf.append (",\"tablebaseCacheMisses\":");
+                buf.append (event.tablebaseMisses);
+            }
+        }
+        buf.append ('}');
+    }
+
+    private static void appendMove (StringBuffer buf, GameState gameState,
+        long move)
+    {
+        buf.append ('"');
+        buf.append (BoardDiagram.formatMove (
+            Rules.toMove (gameState.getBoardState (), move)));
+        buf.append ('"');
+    }
+
+    //
+    // Write the variation, playing it out from the position to find each
+    // move's path.
+    //
+    private static void appendVariation (StringBuffer buf,
+        GameState gameState, long[] variation)
+    {
+        GameState position = new GameState (gameState);
+        buf.append (",\"pv\":[");
+        for (int i = 0; i < variation.length; ++i)
+        {
+            if (i > 0)
+                buf.append (',');
+            Move move = Rules.toMove (position.getBoardState (), variation[i]);
+            buf.append ('"').append (BoardDiagram.formatMove (move));
+            buf.append ('"');
+            position.executeMove (move);
+        }
+        buf.append (']');
+    }
+}
@@ -0,0 +1,263 @@
+//
+// SearchStats.java
+//
+
+package net.ech.checkers;
+
+import java.lang.management.*;
+import javax.management.*;
+
+/**
+ * Sums up how AutoPlayer chose its moves, over one game or many: nodes
+ * and nodes per second, depth, branching factor, cutoff and table hit
+ * rates, the time spent generating moves and grading positions, and a
+ * histogram of the time taken per move.  Listen to any number of players
+ * with one of these; give each game its own, with a parent to sum up all
+ * games as well.  May be registered as an MBean, to be watched from a JMX
+ * console.
+ *
+ * Bucket i of the latency histogram counts the moves that took less than
+ * 2^i milliseconds but no less than half that; the last bucket counts all
+ * the moves that took longer.
+ */
+public class SearchStats implements SearchStatsListener, SearchStatsMBean
+{
+    public final static int LATENCY_BUCKETS = 16;
+
+    private SearchStats parent;
+    private ObjectName objectName;
+
+    private MoveStats totals;
+    private long moves;
+    private long bookMoves;
+    private long searchedMoves;
+    private long depths;
+    private double branching;
+    private long[] latencies;
+    private MoveStats lastMove;
+    private MoveStats slowestMove;
+
+    public SearchStats ()
+    {
+        this (null);
+    }
+
+    /**
+     * Construct stats that pass each move on to a parent, as well.
+     */
+    public SearchStats (SearchStats parent)
+    {
+        this.parent = parent;
+        reset ();
+    }
+
+    public synchronized void reset ()
+    {
+        totals = new MoveStats ();
+        moves = 0;
+        bookMoves = 0;
+        searchedMoves = 0;
+        depths = 0;
+        branching = 0;
+        latencies = new long [LATENCY_BUCKETS];
+        lastMove = null;
+        slowestMove = null;
+    }
+
+    public void moveSearched (AutoPlayer player, MoveStats stats)
+    {
+        synchronized (this)
+        {
+            ++moves;
+            if (stats.isBook ())
+                ++bookMoves;
+            else if (stats.getLevel () >= 0)
+            {
+                ++searchedMoves;
+                depths += stats.getDepth ();
+                branching += stats.getBranchingFactor ();
+            }
+            totals.add (stats);
+            totals.nanos += stats.getNanos ();
+            ++latencies[bucket (stats.getNanos ())];
+            lastMove = stats;
+            if (slowestMove == null ||
+                stats.getNanos () > slowestMove.getNanos ())
+            {
+                slowestMove = stats;
+            }
+        }
+        if (parent != null)
+            parent.moveSearched (player, stats);
+    }
+
+    private static int bucket (long nanos)
+    {
+        long millis = nanos / 1000000;
+        int bucket = 64 - Long.numberOfLeadingZeros (millis);
+        return Math.min (bucket, LATENCY_BUCKETS - 1);
+    }
+
+    /**
+     * Register as an MBean in the platform MBean server, under the given
+     * name, of type SearchStats in this package's domain.
+     */
+    public synchronized void register (String name)
+        throws JMException
+    {
+        ObjectName objectName = new ObjectName ("net.ech.checkers:" +
+            "type=SearchStats,name=" + ObjectName.quote (name));
+        ManagementFactory.getPlatformMBeanServer ()
+            .registerMBean (this, objectName);
+        this.objectName = objectName;
+    }
+
+    /**
+     * Unregister the MBean, if registered.
+     */
+    public synchronized void unregister ()
+        throws JMException
+    {
+        if (objectName != null)
+        {
+            ManagementFactory.getPlatformMBeanServer ()
+                .unregisterMBean (objectName);
+            objectName = null;
+        }
+    }
+
+    /**
+     * Return the number of moves chosen.
+     */
+    public synchronized long getMoves ()
+    {
+        return moves;
+    }
+
+    /**
+     * Return the number of moves taken from the opening book.  The rest
+     * were searched, unless there was only one to choose.
+     */
+    public synchronized long getBookMoves ()
+    {
+        return bookMoves;
+    }
+
+    public synchronized long getNodes ()
+    {
+        return totals.getNodes ();
+    }
+
+    public synchronized long getNodesPerSecond ()
+    {
+        return totals.getNodesPerSecond ();
+    }
+
+    /**
+     * Return the average number of plies looked ahead, over the moves
+     * searched.
+     */
+    public synchronized double getAverageDepth ()
+    {
+        return searchedMoves == 0 ? 0 : (double) depths / searchedMoves;
+    }
+
+    public synchronized int getMaxSelectiveDepth ()
+    {
+        return totals.getSelectiveDepth ();
+    }
+
+    /**
+     * Return the average effective branching factor of the moves searched.
+     */
+    public synchronized double getBranchingFactor ()
+    {
+        return searchedMoves == 0 ? 0 : branching / searchedMoves;
+    }
+
+    public synchronized double getCutoffRate ()
+    {
+        return totals.getCutoffRate ();
+    }
+
+    public synchronized double getTableHitRate ()
+    {
+        return totals.getTableHitRate ();
+    }
+
+    /**
+     * Return the estimated time spent generating moves, in milliseconds.
+     */
+    public synchronized double getGenerateMillis ()
+    {
+        return MoveStats.millis (totals.getGenerateNanos ());
+    }
+
+    /**
+     * Return the estimated time spent grading positions, in milliseconds.
+     */
+    public synchronized double getEvaluateMillis ()
+    {
+        return MoveStats.millis (totals.getEvaluateNanos ());
+    }
+
+    /**
+     * Return the average time taken per move, in milliseconds.
+     */
+    public synchronized double getAverageMillis ()
+    {
+        return moves == 0 ? 0 : MoveStats.millis (totals.getNanos () / moves);
+    }
+
+    /**
+     * Return a copy of the latency histogram.
+     */
+    public synchronized long[] getLatencyHistogram ()
+    {
+        return latencies.clone ();
+    }
+
+    /**
+     * Return a bound, in milliseconds, on the time taken by the given
+     * fraction of the moves, from the latency histogram: for example, 0.99
+     * for the 99th percentile.  Return -1 if the bound is beyond the
+     * histogram, or 0 if there have been no moves.
+     */
+    public synchronized long getLatencyMillis (double fraction)
+    {
+        if (moves == 0)
+            return 0;
+        long count = 0;
+        for (int i = 0; i < LATENCY_BUCKETS - 1; ++i)
+        {
+            count += latencies[i];
+            if (count >= fraction * moves)
+                return 1L << i;
+        }
+        return -1;
+    }
+
+    public synchronized String getLastMove ()
+    {
+        return lastMove == null ? null : lastMove.toString ();
+    }
+
+    public synchronized String getSlowestMove ()
+    {
+        return slowestMove == null ? null : slowestMove.toString ();
+    }
+
+    public synchronized String toString ()
+    {
+        return moves + " moves, " + getAverageMillis () + " ms/move (50% " +
+            "under " + getLatencyMillis (0.5) + " ms, 99% under " +
+            getLatencyMillis (0.99) + " ms), " + getNodesPerSecond () +
+            " nodes/sec, depth " + MoveStats.round (getAverageDepth ()) +
+            "/" + getMaxSelectiveDepth () + ", branching " +
+            MoveStats.round (getBranchingFactor ()) + ", cutoffs " +
+            MoveStats.percent (getCutoffRate ()) + ", table hits " +
+            MoveStats.percent (getTableHitRate ()) + ", movegen " +
+            getGenerateMillis () + " ms, eval " + getEvaluateMillis () +
+            " ms";
+    }
+}
@@ -0,0 +1,18 @@
+//
+// SearchStatsListener.java
+//
+
+package net.ech.checkers;
+
+/**
+ * Hears how AutoPlayer chose each of its moves.  See
+ * AutoPlayer.setStatsListener.
+ */
+public interface SearchStatsListener
+{
+    /**
+     * Called when a player has chosen a move, in the thread that chose it,
+     * before the move is made.  Should return promptly.
+     */
+    public void moveSearched (AutoPlayer player, MoveStats stats);
+}
@@ -0,0 +1,45 @@
+//
+// SearchStatsMBean.java
+//
+
+package net.ech.checkers;
+
+/**
+ * The management interface of SearchStats, for JMX consoles.
+ */
+public interface SearchStatsMBean
+{
+    public long getMoves ();
+
+    public long getBookMoves ();
+
+    public long getNodes ();
+
+    public long getNodesPerSecond ();
+
+    public double getAverageDepth ();
+
+    public int getMaxSelectiveDepth ();
+
+    public double getBranchingFactor ();
+
+    public double getCutoffRate ();
+
+    public double getTableHitRate ();
+
+    public double getGenerateMillis ();
+
+    public double getEvaluateMillis ();
+
+    public double getAverageMillis ();
+
+    public long[] getLatencyHistogram ();
+
+    public long getLatencyMillis (double fraction);
+
+    public String getLastMove ();
+
+    public String getSlowestMove ();
+
+    public void reset ();
+}
@@ -0,0 +1,645 @@
+//
+// Searcher.java
+//
+
+package net.ech.checkers;
+
+//
+// The lookahead behind AutoPlayer.  A Searcher postulates moves on its own
+// SearchBoard and generates them into one reusable buffer per ply, so the
+// search allocates nothing per node.  Not thread-safe; use one per search.
+//
+// Moves are searched best-looking first, since alpha-beta prunes most when
+// the best move comes early: the move stored in the transposition table,
+// then captures by the number of pieces taken, then the "killer" moves that
+// last cut off the search at the same ply, then the rest by how often they
+// have cut it off anywhere (the history table).  Ties keep the order of
+// generation; only the root moves are put in random order, by RootSearch.
+//
+// At the lookahead horizon, a position in which the player to move must
+// capture is not graded as it stands, since the capture may change its
+// worth entirely; the captures are played out (quiesce) until the position
+// is quiet.  Captures are forced, so the search of them is exact, with no
+// option of standing pat, and short, since each takes at least one piece.
+//
+class Searcher implements Constants
+{
+    // The score of a won game, and a bound beyond any score.  Scores must
+    // fit in the transposition table.
+    final static int WIN = 2000;
+    final static int INFINITY = WIN + 1;
+
+    // The score of a win known from the endgame tables, less the number of
+    // moves to it, so that quicker wins score higher.
+    final static int TABLEBASE_WIN = WIN / 2;
+
+    // The bound on the grade of a position that is not known to be won or
+    // lost, below the least score of a win known from the tables.
+    final static int MAX_GRADE = TABLEBASE_WIN - Tablebase.MAX_DISTANCE - 1;
+
+    private SearchBoard board;
+    private int level;
+    private TranspositionTable table;
+    private Tablebase tablebase;
+    private Evaluator evaluator;
+    private long[][] moveBuffers;
+    private long nodes;
+    private long cutoffs;
+
+    // Counts for MoveStats.  Moves are generated and positions graded
+    // with the clock read around one call in every SAMPLE_INTERVAL; the
+    // times of those samples are summed, and counted.
+    private long quiescenceNodes;
+    private int maxDepth;
+    private long generations;
+    private long quiescenceGenerations;
+    private long generateNanos;
+    private long generateSamples;
+    private long evaluations;
+    private long evaluateNanos;
+    private long evaluateSamples;
+    private long tableProbes;
+    private long tableHits;
+    private long deadline;
+    private volatile boolean aborted;
+    private int rotation;
+
+    // Move ordering state.
+    private int[][] orderScores;
+    private long[][] killers;
+    private int[] history = new int [ON_SQUARES * ON_SQUARES];
+
+    // The most plies of captures there can be in a row: each takes a piece,
+    // and a side with no pieces has lost.
+    private final static int QUIESCENCE_PLIES =
+        2 * STARTING_PIECES_PER_PLAYER - 1;
+
+    // The clock is read once per this many nodes.
+    private final static int CLOCK_INTERVAL = 1024;
+
+    // Move generation and grading are timed once per this many calls.
+    final static int SAMPLE_INTERVAL = 64;
+
+    // The least time it takes to read the clock, taken off each timing.
+    private final static long CLOCK_OVERHEAD;
+    static
+    {
+        long least = Long.MAX_VALUE;
+        for (int i = 0; i < 1000; ++i)
+        {
+            long start = System.nanoTime ();
+            least = Math.min (least, System.nanoTime () - start);
+        }
+        CLOCK_OVERHEAD = least;
+    }
+
+    // A sample taking longer than this was held up by something else, such
+    // as the thread being descheduled, and is ignored.
+    private final static long MAX_SAMPLE_NANOS = 100000;
+
+    //
+    // Ordering scores.  Captures and slides are never legal together, so
+    // the ranges of capture and slide scores may overlap.
+    //
+    private final static int TABLE_MOVE_SCORE = 1 << 30;
+    private final static int CAPTURE_SCORE = 1 << 20;
+    private final static int KILLER_SCORE = 1 << 20;
+    private final static int KILLERS_PER_PLY = 2;
+
+    // History scores are halved when any grows beyond this.
+    private final static int MAX_HISTORY = 1 << 16;
+
+    /**
+     * Construct a searcher for the given position.  The transposition
+     * table may be null.
+     */
+    Searcher (GameState gameState, TranspositionTable table)
+    {
+        this.board = new SearchBoard (gameState);
+        this.table = table;
+        setEvaluator (StandardEvaluator.getDefault ());
+        setLevel (0);
+    }
+
+    /**
+     * Set the maximum lookahead depth.  Level 0 looks one move ahead, and
+     * on through any captures pending.
+     */
+    void setLevel (int level)
+    {
+        this.level = level;
+        int plies = level + 2 + QUIESCENCE_PLIES;
+        if (moveBuffers == null || moveBuffers.length < plies)
+        {
+            moveBuffers = new long [plies][PackedMove.MAX_MOVES];
+            orderScores = new int [plies][PackedMove.MAX_MOVES];
+            killers = new long [plies][KILLERS_PER_PLY];
+        }
+    }
+
+    int getLevel ()
+    {
+        return level;
+    }
+
+    /**
+     * Set the time, in System.nanoTime terms, at which the search is to
+     * abort by throwing SearchAbortedException.  Zero means never.
+     */
+    void setDeadline (long deadline)
+    {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Make the search abort soon, by throwing SearchAbortedException.
+     * May be called from any thread.
+     */
+    void abort ()
+    {
+        aborted = true;
+    }
+
+    /**
+     * Look up positions with few pieces in the given endgame tables, or in
+     * none if null.
+     */
+    void setTablebase (Tablebase tablebase)
+    {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Grade positions at the leaves with the given evaluator.
+     */
+    void setEvaluator (Evaluator evaluator)
+    {
+        this.evaluator = evaluator;
+        board.setEvaluator (evaluator);
+    }
+
+    /**
+     * Vary the order in which moves are searched, so that searchers
+     * working on the same position in parallel tend to take different
+     * paths through the tree.  Zero, the default, leaves the order be.
+     */
+    void setRotation (int rotation)
+    {
+        this.rotation = rotation;
+    }
+
+    /**
+     * Write the legal moves at the root of the search to the buffer.
+     * Return the number of moves.
+     */
+    int generateRootMoves (long[] buffer)
+    {
+        return board.generateMoves (buffer, 0);
+    }
+
+    /**
+     * Evaluate a move by looking ahead, up to the maximum lookahead depth.
+     * The result is exact if it falls strictly within (alpha, beta).
+     * Otherwise it is a bound: no greater than the true score if it is at
+     * most alpha, no less than the true score if it is at least beta.
+     */
+    int scoreMove (long move, int depth, int alpha, int beta)
+    {
+        boolean moverIsSouth = board.getActivePlayer () == SOUTH;
+
+        if ((++nodes & (CLOCK_INTERVAL - 1)) == 0 &&
+            (aborted ||
+                (deadline != 0 && System.nanoTime () - deadline >= 0)))
+        {
+            throw new SearchAbortedException ();
+        }
+
+        if (depth >= maxDepth)
+        {
+            maxDepth = depth + 1;
+        }
+        if (depth > level)
+        {
+            ++quiescenceNodes;
+        }
+
+        // Postulate the move.
+        board.makeMove (move);
+
+        int score;
+        if (!board.canPlay ())
+        {
+            // The mover has won.
+            score = WIN;
+        }
+        else if (tablebase != null &&
+            (score = probeTablebase ()) != Tablebase.UNKNOWN)
+        {
+            // The endgame tables know how this ends.
+        }
+        else if (depth < level)
+        {
+            // Look ahead, recursively.
+            score = findBestScore (depth + 1, -beta, -alpha) * -1;
+        }
+        else if (board.mustCapture ())
+        {
+            // Past the horizon, but the game is not quiet.
+            score = quiesce (depth + 1, -beta, -alpha) * -1;
+        }
+        else
+        {
+            // Can look ahead no further.  Grade the game as it stands.
+            score = scoreGame (moverIsSouth);
+        }
+
+        // Take the move back.
+        board.unmakeMove ();
+
+        return score;
+    }
+
+    /**
+     * Recursive part of the lookahead algorithm: alpha-beta with
+     * principal variation search.  The first move is searched with the
+     * full window; each later move is first tested against a null window,
+     * and searched again with the full window only if it proves better.
+     */
+    int findBestScore (int depth, int alpha, int beta)
+    {
+        // Number of plies yet to look ahead from here.
+        int draft = level - depth + 1;
+
+        // Has this position been searched already?
+        long key = board.getHashKey ();
+        long tableMove = 0;
+        if (table != null)
+        {
+            long data = table.probe (key);
+            ++tableProbes;
+            if (data != 0)
+            {
+                ++tableHits;
+                tableMove = TranspositionTable.getMove (data);
+                if (TranspositionTable.getDepth (data) >= draft)
+                {
+                    int score = TranspositionTable.getScore (data);
+                    switch (TranspositionTable.getBound (data))
+                    {
+                    case TranspositionTable.EXACT:
+                        return score;
+                    case TranspositionTable.LOWER:
+                        if (score >= beta)
+                            return score;
+                        break;
+                    case TranspositionTable.UPPER:
+                        if (score <= alpha)
+                            return score;
+                        break;
+                    }
+                }
+            }
+        }
+
+        long[] moves = moveBuffers[depth];
+        int count = generateMoves (moves);
+        if (count == 0)
+            throw new IllegalStateException ("look for best move of none");
+
+        orderMoves (moves, count, depth, tableMove);
+
+        // Past the presumed best move, vary the order if asked.
+        if (rotation != 0 && count > 2)
+        {
+            int swap = 1 + (rotation + depth) % (count - 1);
+            long temp = moves[1];
+            moves[1] = moves[swap];
+            moves[swap] = temp;
+        }
+
+        int originalAlpha = alpha;
+        long bestMove = 0;
+        int bestScore = -INFINITY;
+        for (int i = 0; i < count; ++i)
+        {
+            int thisScore;
+            if (i == 0)
+            {
+                thisScore = scoreMove (moves[i], depth, alpha, beta);
+            }
+            else
+            {
+                thisScore = scoreMove (moves[i], depth, alpha, alpha + 1);
+                if (thisScore > alpha && thisScore < beta)
+                {
+                    thisScore = scoreMove (moves[i], depth, alpha, beta);
+                }
+            }
+
+            if (thisScore > bestScore)
+            {
+                bestScore = thisScore;
+                bestMove = moves[i];
+                if (thisScore > alpha)
+                {
+                    alpha = thisScore;
+                    if (alpha >= beta)
+                    {
+                        // The opponent will not allow this line.
+                        ++cutoffs;
+                        if (!PackedMove.isHop (bestMove))
+                            recordCutoff (bestMove, depth, draft);
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (table != null)
+        {
+            int bound =
+                bestScore <= originalAlpha ? TranspositionTable.UPPER :
+                bestScore >= beta ? TranspositionTable.LOWER :
+                TranspositionTable.EXACT;
+            table.store (key, draft, bound, bestScore, bestMove);
+        }
+
+        return bestScore;
+    }
+
+    //
+    // Write the active player's moves to the buffer, now and then timing
+    // it.  Return the number of moves.
+    //
+    private int generateMoves (long[] moves)
+    {
+        if ((++generations & (SAMPLE_INTERVAL - 1)) != 0)
+            return board.generateMoves (moves, 0);
+        long start = System.nanoTime ();
+        int count = board.generateMoves (moves, 0);
+        long elapsed = elapsedSince (start);
+        if (elapsed >= 0)
+        {
+            generateNanos += elapsed;
+            ++generateSamples;
+        }
+        return count;
+    }
+
+    //
+    // Search the captures that the player to move must make, and those
+    // that follow them, until the game is quiet.  Plain alpha-beta: there
+    // are few captures to a position, and none are stored in the table.
+    //
+    private int quiesce (int depth, int alpha, int beta)
+    {
+        long[] moves = moveBuffers[depth];
+        int count = generateMoves (moves);
+        ++quiescenceGenerations;
+        orderMoves (moves, count, depth, 0);
+
+        int bestScore = -INFINITY;
+        for (int i = 0; i < count; ++i)
+        {
+            int thisScore = scoreMove (moves[i], depth, alpha, beta);
+            if (thisScore > bestScore)
+            {
+                bestScore = thisScore;
+                if (thisScore > alpha)
+                {
+                    alpha = thisScore;
+                    if (alpha >= beta)
+                        break;
+                }
+            }
+        }
+        return bestScore;
+    }
+
+    //
+    // Sort the moves at the given depth, most promising first.  The lists
+    // are short, so an insertion sort does.  It is stable, so that equally
+    // ranked moves keep the order in which they were generated.
+    //
+    private void orderMoves (long[] moves, int count, int depth, long tableMove)
+    {
+        int[] scores = orderScores[depth];
+        long killer0 = killers[depth][0];
+        long killer1 = killers[depth][1];
+        int kingBits = board.getKingBits ();
+
+        for (int i = 0; i < count; ++i)
+        {
+            long move = moves[i];
+            int score;
+            if (move == tableMove)
+            {
+                score = TABLE_MOVE_SCORE;
+            }
+            else if (PackedMove.isHop (move))
+            {
+                // More pieces first; of as many, more kings first.
+                int captured = PackedMove.getCaptured (move);
+                score = CAPTURE_SCORE + (PackedMove.getHopCount (move) << 5) +
+                    Integer.bitCount (captured & kingBits);
+            }
+            else if (move == killer0)
+            {
+                score = KILLER_SCORE;
+            }
+            else if (move == killer1)
+            {
+                score = KILLER_SCORE - 1;
+            }
+            else
+            {
+                score = history[historyIndex (move)];
+            }
+
+            int j = i;
+            for (; j > 0 && scores[j - 1] < score; --j)
+            {
+                moves[j] = moves[j - 1];
+                scores[j] = scores[j - 1];
+            }
+            moves[j] = move;
+            scores[j] = score;
+        }
+    }
+
+    //
+    // Remember a slide that cut off the search, as a killer at this depth
+    // and in the history table, weighted by the depth of the search below.
+    //
+    private void recordCutoff (long move, int depth, int draft)
+    {
+        long[] plyKillers = killers[depth];
+        if (plyKillers[0] != move)
+        {
+            plyKillers[1] = plyKillers[0];
+            plyKillers[0] = move;
+        }
+
+        int index = historyIndex (move);
+        history[index] += draft * draft;
+        if (history[index] > MAX_HISTORY)
+        {
+            for (int i = 0; i < history.length; ++i)
+            {
+                history[i] >>= 1;
+            }
+        }
+    }
+
+    private static int historyIndex (long move)
+    {
+        return PackedMove.getOriginBit (move) * ON_SQUARES +
+            PackedMove.getTargetBit (move);
+    }
+
+    /**
+     * Write the principal variation that begins with the given root move
+     * to 'line', as far as the transposition table remembers it and the
+     * line has room.  Return its length.  Not to be called during a search.
+     */
+    int getPrincipalVariation (long move, long[] line)
+    {
+        // An aborted search leaves the moves it was looking at made.
+        board.unmakeMoves ();
+
+        long[] moves = new long [PackedMove.MAX_MOVES];
+        int length = 0;
+        line[length++] = move;
+        board.makeMove (move);
+        while (table != null && length < line.length && board.canPlay ())
+        {
+            long data = table.probe (board.getHashKey ());
+            if (data == 0)
+                break;
+
+            // The entry may be another position's, with the same index and
+            // a colliding key; follow it only if its move is legal here.
+            long next = TranspositionTable.getMove (data);
+            int count = board.generateMoves (moves, 0);
+            int i = 0;
+            while (i < count && moves[i] != next)
+                ++i;
+            if (i == count)
+                break;
+
+            line[length++] = next;
+            board.makeMove (next);
+        }
+        for (int i = 0; i < length; ++i)
+        {
+            board.unmakeMove ();
+        }
+        return length;
+    }
+
+    /**
+     * Return the number of moves postulated so far.
+     */
+    long getNodes ()
+    {
+        return nodes;
+    }
+
+    /**
+     * Return the number of times the search was cut off by a bound.
+     */
+    long getCutoffs ()
+    {
+        return cutoffs;
+    }
+
+    /**
+     * Add the counts of this searcher's search so far to the stats, with
+     * the times sampled scaled up to estimates of the whole.
+     */
+    void addCounts (MoveStats stats)
+    {
+        stats.maxDepth = Math.max (stats.maxDepth, maxDepth);
+        stats.nodes += nodes;
+        stats.quiescenceNodes += quiescenceNodes;
+        stats.cutoffs += cutoffs;
+        stats.generations += generations;
+        stats.quiescenceGenerations += quiescenceGenerations;
+        stats.generateNanos +=
+            estimate (generateNanos, generateSamples, generations);
+        stats.evaluations += evaluations;
+        stats.evaluateNanos +=
+            estimate (evaluateNanos, evaluateSamples, evaluations);
+        stats.tableProbes += tableProbes;
+        stats.tableHits += tableHits;
+    }
+
+    //
+    // Look up the position in the endgame tables.  Return its score from
+    // the point of view of the player who just moved, or Tablebase.UNKNOWN.
+    //
+    private int probeTablebase ()
+    {
+        int value = tablebase.probe (board.getOccupiedBits (),
+            board.getSouthBits (), board.getKingBits (),
+            board.getActivePlayer ());
+        if (value == Tablebase.UNKNOWN || value == 0)
+            return value;
+        return value > 0 ? value - TABLEBASE_WIN : TABLEBASE_WIN + value;
+    }
+
+    /**
+     * Grade the game as it stands.
+     * If 'asSouth' is true, grade the game from the point of view of the
+     * south player.  Return a number in -MAX_GRADE..MAX_GRADE.
+     */
+    private int scoreGame (boolean asSouth)
+    {
+        int scoreAsSouth;
+        if ((++evaluations & (SAMPLE_INTERVAL - 1)) != 0)
+        {
+            scoreAsSouth = evaluate ();
+        }
+        else
+        {
+            long start = System.nanoTime ();
+            scoreAsSouth = evaluate ();
+            long elapsed = elapsedSince (start);
+            if (elapsed >= 0)
+            {
+                evaluateNanos += elapsed;
+                ++evaluateSamples;
+            }
+        }
+        if (scoreAsSouth > MAX_GRADE)
+            scoreAsSouth = MAX_GRADE;
+        else if (scoreAsSouth < -MAX_GRADE)
+            scoreAsSouth = -MAX_GRADE;
+        return asSouth ? scoreAsSouth : (scoreAsSouth * -1);
+    }
+
+    //
+    // Return the time since the clock read 'start', less the time it takes
+    // to read the clock, or -1 if too long for a fair sample.
+    //
+    private static long elapsedSince (long start)
+    {
+        long elapsed = System.nanoTime () - start - CLOCK_OVERHEAD;
+        return elapsed > MAX_SAMPLE_NANOS ? -1 : Math.max (elapsed, 0);
+    }
+
+    //
+    // Estimate the time taken by all calls from that taken by a sample.
+    //
+    private static long estimate (long nanos, long samples, long calls)
+    {
+        return samples == 0 ? 0 : (long) ((double) nanos / samples * calls);
+    }
+
+    private int evaluate ()
+    {
+        return evaluator.evaluate (board.getOccupiedBits (),
+            board.getSouthBits (), board.getKingBits (),
+            board.getActivePlayer (), board.getPieceSum ());
+    }
+}
@@ -0,0 +1,294 @@
+//
+// SelfPlay.java
+//
+
+package net.ech.checkers;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Plays AutoPlayer against AutoPlayer, many games at once, without a
+ * board to show them on, and reports the results and the speed of each
+ * side: for matching one engine setting against another, and for
+ * checking that a change has not made the engine weaker or slower.
+ *
+ * Usage: SelfPlay [options]
+ *
+ *   -games n          games to play (100)
+ *   -threads n        games to play at once (one per processor)
+ *   -max-plies n      plies after which a game is called a draw (200)
+ *   -south-level n    lookahead level of the south player (1)
+ *   -north-level n    lookahead level of the north player (1)
+ *   -south-time ms    time budget per move of the south player, instead
+ *   -north-time ms    time budget per move of the north player, instead
+ *   -table mb         transposition table size of each player (16)
+ *   -book file        opening book for both players
+ *   -tablebase dir    endgame tables for both players
+ *   -record file      append the games to a game record file
+ *   -weights file     evaluator weights file for both players
+ *   -south-weights f  evaluator weights file of the south player
+ *   -north-weights f  evaluator weights file of the north player
+ *
+ * Each thread keeps one player per side for all the games it plays.  Games
+ * differ because each player picks at random among equally good moves.
+ * A game cut off at the ply limit is recorded as drawn.
+ */
+public class SelfPlay implements Constants
+{
+    // Indexes of per-side settings and counts.
+    private final static int SOUTH_SIDE = 0;
+    private final static int NORTH_SIDE = 1;
+
+    private int games = 100;
+    private int threads = Runtime.getRuntime ().availableProcessors ();
+    private int maxPlies = 200;
+    private int[] levels = { 1, 1 };
+    private long[] timeBudgets = { 0, 0 };
+    private Evaluator[] evaluators = {
+        StandardEvaluator.getDefault (), StandardEvaluator.getDefault ()
+    };
+    private int tableSize = 16;
+    private OpeningBook openingBook;
+    private Tablebase tablebase;
+    private GameRecordWriter recordWriter;
+
+    private AtomicInteger nextGame = new AtomicInteger ();
+    private int southWins;
+    private int northWins;
+    private int draws;
+    private long[] moveCounts = new long [2];
+    private long[] moveNanos = new long [2];
+    private long[] nodes = new long [2];
+    private SearchStats[] stats = { new SearchStats (), new SearchStats () };
+
+    public static void main (String[] args)
+        throws Exception
+    {
+        SelfPlay selfPlay = new SelfPlay ();
+        for (int i = 0; i < args.length; ++i)
+        {
+            if (i + 1 == args.length)
+                usage ();
+            String option = args[i];
+            String value = args[++i];
+            if (option.equals ("-games"))
+                selfPlay.games = Integer.parseInt (value);
+            else if (option.equals ("-threads"))
+                selfPlay.threads = Math.max (Integer.parseInt (value), 1);
+            else if (option.equals ("-max-plies"))
+                selfPlay.maxPlies = Integer.parseInt (value);
+            else if (option.equals ("-south-level"))
+                selfPlay.levels[SOUTH_SIDE] = Integer.parseInt (value);
+            else if (option.equals ("-north-level"))
+                selfPlay.levels[NORTH_SIDE] = Integer.parseInt (value);
+            else if (option.equals ("-south-time"))
+                selfPlay.timeBudgets[SOUTH_SIDE] = Long.parseLong (value);
+            else if (option.equals ("-north-time"))
+                selfPlay.timeBudgets[NORTH_SIDE] = Long.parseLong (value);
+            else if (option.equals ("-table"))
+                selfPlay.tableSize = Integer.parseInt (value);
+            else if (option.equals ("-book"))
+                selfPlay.openingBook = new OpeningBook (new File (value));
+            else if (option.equals ("-tablebase"))
+                selfPlay.tablebase = new Tablebase (new File (value));
+            else if (option.equals ("-record"))
+                selfPlay.recordWriter = new GameRecordWriter (new File (value));
+            else if (option.equals ("-weights"))
+            {
+                selfPlay.evaluators[SOUTH_SIDE] =
+                selfPlay.evaluators[NORTH_SIDE] =
+                    StandardEvaluator.read (new File (value));
+            }
+            else if (option.equals ("-south-weights"))
+                selfPlay.evaluators[SOUTH_SIDE] =
+                    StandardEvaluator.read (new File (value));
+            else if (option.equals ("-north-weights"))
+                selfPlay.evaluators[NORTH_SIDE] =
+                    StandardEvaluator.read (new File (value));
+            else
+                usage ();
+        }
+
+        long start = System.currentTimeMillis ();
+        selfPlay.play ();
+        if (selfPlay.recordWriter != null)
+            selfPlay.recordWriter.close ();
+        selfPlay.report (System.out);
+        System.out.println ("Elapsed " +
+            (System.currentTimeMillis () - start) + " ms");
+    }
+
+    private static void usage ()
+    {
+        System.err.println ("usage: SelfPlay [-games n] [-threads n] " +
+            "[-max-plies n] [-south-level n] [-north-level n] " +
+            "[-south-time ms] [-north-time ms] [-table mb] [-book file] " +
+            "[-tablebase dir] [-record file] [-weights file] " +
+            "[-south-weights file] [-north-weights file]");
+        System.exit (1);
+    }
+
+    private static int side (int player)
+    {
+        return player == SOUTH ? SOUTH_SIDE : NORTH_SIDE;
+    }
+
+    /**
+     * Play all the games, and wait for them to finish.
+     */
+    public void play ()
+        throws InterruptedException, ExecutionException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool (threads);
+        try
+        {
+            List futures = new ArrayList ();
+            for (int i = 0; i < threads; ++i)
+            {
+                futures.add (executor.submit (new Runnable ()
+                {
+                    public void run ()
+                    {
+                        AutoPlayer[] players =
+                            { newPlayer (SOUTH_SIDE), newPlayer (NORTH_SIDE) };
+                        while (nextGame.getAndIncrement () < games)
+                        {
+                            playGame (players);
+                        }
+                    }
+                }));
+            }
+            for (Iterator it = futures.iterator (); it.hasNext (); )
+            {
+                ((Future) it.next ()).get ();
+            }
+        }
+        finally
+        {
+            executor.shutdown ();
+        }
+    }
+
+    private AutoPlayer newPlayer (int side)
+    {
+        AutoPlayer player = new AutoPlayer ();
+        player.setLevel (levels[side]);
+        player.setTimeBudget (timeBudgets[side]);
+        player.setTableSize (tableSize);
+        player.setOpeningBook (openingBook);
+        player.setTablebase (tablebase);
+        player.setEvaluator (evaluators[side]);
+        player.setStatsListener (stats[side]);
+        return player;
+    }
+
+    //
+    // Play one game from the start, and record the result.
+    //
+    private void playGame (AutoPlayer[] players)
+    {
+        long[] gameMoves = new long [2];
+        long[] gameNanos = new long [2];
+        long[] gameNodes = new long [2];
+
+        GameRecord record = new GameRecord ();
+        GameState gameState = new GameState ();
+        gameState.restart ();
+        int lastPlayer = NULL_PLAYER;
+        int plies = 0;
+        for (; gameState.getActivePlayer () != NULL_PLAYER && plies < maxPlies;
+            ++plies)
+        {
+            lastPlayer = gameState.getActivePlayer ();
+            int side = side (lastPlayer);
+            AutoPlayer player = players[side];
+
+            long startNodes = player.getNodes ();
+            long start = System.nanoTime ();
+            Move move = player.chooseMove (gameState);
+            gameNanos[side] += System.nanoTime () - start;
+            gameNodes[side] += player.getNodes () - startNodes;
+            ++gameMoves[side];
+
+            gameState.executeMove (move);
+            record.addMove (move);
+        }
+
+        // A game ends when the player to move cannot move, having lost.
+        int winner =
+            gameState.getActivePlayer () == NULL_PLAYER
+                ? lastPlayer
+                : NULL_PLAYER;
+        record (winner, gameMoves, gameNanos, gameNodes);
+
+        if (recordWriter != null)
+        {
+            record.setResult (winner == NULL_PLAYER
+                ? GameRecord.DRAWN
+                : GameRecord.resultOf (gameState, winner));
+            try
+            {
+                recordWriter.write (record);
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException (e);
+            }
+        }
+    }
+
+    private synchronized void record (
+        int winner, long[] gameMoves, long[] gameNanos, long[] gameNodes)
+    {
+        if (winner == SOUTH)
+            ++southWins;
+        else if (winner == NORTH)
+            ++northWins;
+        else
+            ++draws;
+
+        for (int side = 0; side < 2; ++side)
+        {
+            moveCounts[side] += gameMoves[side];
+            moveNanos[side] += gameNanos[side];
+            nodes[side] += gameNodes[side];
+        }
+
+        int played = southWins + northWins + draws;
+        if (played % 100 == 0)
+        {
+            System.out.println (played + " games: " + southWins + " " +
+                draws + " " + northWins);
+        }
+    }
+
+    /**
+     * Print the results: wins, draws and losses, and average move time
+     * and nodes per second of each side, with its search statistics.
+     */
+    public synchronized void report (PrintStream out)
+    {
+        reportSide (out, "SOUTH", SOUTH_SIDE);
+        reportSide (out, "NORTH", NORTH_SIDE);
+        int played = southWins + northWins + draws;
+        out.println (played + " games: SOUTH won " + southWins +
+            ", drew " + draws + ", lost " + northWins);
+    }
+
+    private void reportSide (PrintStream out, String name, int side)
+    {
+        String setting =
+            timeBudgets[side] > 0
+                ? timeBudgets[side] + " ms/move"
+                : "level " + levels[side];
+        long moves = Math.max (moveCounts[side], 1);
+        long nanos = Math.max (moveNanos[side], 1);
+        out.println (name + " (" + setting + "): " + moveCounts[side] +
+            " moves, " + (nanos / moves / 1000) / 1000.0 + " ms/move, " +
+            (long) (nodes[side] * 1e9 / nanos) + " nodes/sec");
+        out.println ("    " + stats[side]);
+    }
+}
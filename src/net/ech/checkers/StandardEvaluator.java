@@ -0,0 +1,317 @@
+//
+// StandardEvaluator.java
+//
+
+package net.ech.checkers;
+
+import java.io.*;
+
+/**
+ * The usual Evaluator: material, and a few positional terms, each with a
+ * weight.  Each term counts for the south player what it counts against
+ * the north, so that the grade of a position is the negation of that of
+ * its mirror image.
+ *
+ * The piece values are the weight of a man or a king, plus, for a man,
+ * ADVANCE for each row it has come from its own back rank, or BACK_RANK if
+ * it is still there guarding it, and, for either, CENTER_MAN or
+ * CENTER_KING if it stands on one of the eight center squares.  The rest
+ * of the grade is MOBILITY for each slide a side could make, and RUNAWAY
+ * for each man that nothing can stop from being crowned: one with no piece
+ * on any square it might pass on its way.
+ *
+ * A weights file gives a weight per line, by name, as "man 64"; blank
+ * lines and lines beginning '#' are ignored, and weights not given keep
+ * their default values.  WeightTuner writes such files.
+ */
+public class StandardEvaluator implements Evaluator, Constants
+{
+    /**
+     * Indexes of the weights.
+     */
+    public final static int MAN = 0;
+    public final static int KING = 1;
+    public final static int ADVANCE = 2;
+    public final static int BACK_RANK = 3;
+    public final static int CENTER_MAN = 4;
+    public final static int CENTER_KING = 5;
+    public final static int MOBILITY = 6;
+    public final static int RUNAWAY = 7;
+    public final static int WEIGHT_COUNT = 8;
+
+    /**
+     * The names of the weights, by index.
+     */
+    public final static String[] WEIGHT_NAMES = {
+        "man", "king", "advance", "back-rank", "center-man", "center-king",
+        "mobility", "runaway"
+    };
+
+    private final static int[] DEFAULT_WEIGHTS = {
+        64, 96, 2, 6, 4, 6, 2, 24
+    };
+
+    // Rows 0 and 7: the back ranks of the north and south players.
+    private final static int NORTH_BACK_RANK = 0xf0000000;
+    private final static int SOUTH_BACK_RANK = 0x0000000f;
+
+    // The middle two squares of each of the middle four rows.
+    private final static int CENTER = 0x00666600;
+
+    // Squares that a man on each square must cross to be crowned, by
+    // player and bit.
+    private final static int[][] CONES = new int [NPLAYERS][ON_SQUARES];
+    static
+    {
+        for (int bit = 0; bit < ON_SQUARES; ++bit)
+        {
+            int south = 1 << bit;
+            int north = 1 << bit;
+            while (south != 0 || north != 0)
+            {
+                south = Bitboard.northwest (south) | Bitboard.northeast (south);
+                north = Bitboard.southwest (north) | Bitboard.southeast (north);
+                CONES[0][bit] |= south;
+                CONES[1][bit] |= north;
+            }
+        }
+    }
+
+    private static StandardEvaluator defaultEvaluator;
+
+    private int[] weights;
+    private int[] pieceValues = new int [PIECE_KINDS * ON_SQUARES];
+
+    /**
+     * Return an evaluator with the default weights.
+     */
+    public static synchronized StandardEvaluator getDefault ()
+    {
+        if (defaultEvaluator == null)
+            defaultEvaluator = new StandardEvaluator (DEFAULT_WEIGHTS);
+        return defaultEvaluator;
+    }
+
+    /**
+     * Construct an evaluator with the given weights, indexed as above.
+     */
+    public StandardEvaluator (int[] weights)
+    {
+        if (weights.length != WEIGHT_COUNT)
+            throw new IllegalArgumentException ("need " + WEIGHT_COUNT +
+                " weights");
+        this.weights = weights.clone ();
+
+        for (int bit = 0; bit < ON_SQUARES; ++bit)
+        {
+            int mask = 1 << bit;
+            int row = Position.squareIndexToRow (Bitboard.bitToSquare (bit));
+            boolean center = (mask & CENTER) != 0;
+
+            int southMan = weights[MAN] + ((mask & SOUTH_BACK_RANK) != 0
+                ? weights[BACK_RANK]
+                : weights[ADVANCE] * (SQUARES_ON_SIDE - 1 - row));
+            int northMan = weights[MAN] + ((mask & NORTH_BACK_RANK) != 0
+                ? weights[BACK_RANK]
+                : weights[ADVANCE] * row);
+            int king = weights[KING];
+            if (center)
+            {
+                southMan += weights[CENTER_MAN];
+                northMan += weights[CENTER_MAN];
+                king += weights[CENTER_KING];
+            }
+
+            pieceValues[SOUTH_MAN * ON_SQUARES + bit] = southMan;
+            pieceValues[SOUTH_KING * ON_SQUARES + bit] = king;
+            pieceValues[NORTH_MAN * ON_SQUARES + bit] = -northMan;
+            pieceValues[NORTH_KING * ON_SQUARES + bit] = -king;
+        }
+    }
+
+    /**
+     * Read an evaluator's weights from a weights file.
+     */
+    public static StandardEvaluator read (File file)
+        throws IOException
+    {
+        int[] weights = DEFAULT_WEIGHTS.clone ();
+        BufferedReader in = new BufferedReader (new FileReader (file));
+        try
+        {
+            String line;
+            while ((line = in.readLine ()) != null)
+            {
+                line = line.trim ();
+                if (line.length () == 0 || line.startsWith ("#"))
+                    continue;
+                int space = line.indexOf (' ');
+                int index = space < 0
+                    ? -1
+                    : indexOf (line.substring (0, space));
+                if (index < 0)
+                    throw new IOException (file + ": bad line: " + line);
+                try
+                {
+                    weights[index] =
+                        Integer.parseInt (line.substring (space).trim ());
+                }
+                catch (NumberFormatException e)
+                {
+                    throw new IOException (file + ": bad line: " + line);
+                }
+            }
+        }
+        finally
+        {
+            in.close ();
+        }
+        return new StandardEvaluator (weights);
+    }
+
+    private static int indexOf (String name)
+    {
+        for (int i = 0; i < WEIGHT_COUNT; ++i)
+        {
+            if (WEIGHT_NAMES[i].equals (name))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Write the weights to a weights file.
+     */
+    public void write (File file)
+        throws IOException
+    {
+        PrintWriter out = new PrintWriter (new FileWriter (file));
+        try
+        {
+            out.println ("# StandardEvaluator weights");
+            for (int i = 0; i < WEIGHT_COUNT; ++i)
+            {
+                out.println (WEIGHT_NAMES[i] + " " + weights[i]);
+            }
+        }
+        finally
+        {
+            out.close ();
+        }
+        if (out.checkError ())
+            throw new IOException (file + ": write failed");
+    }
+
+    /**
+     * Return a copy of the weights.
+     */
+    public int[] getWeights ()
+    {
+        return weights.clone ();
+    }
+
+    public int getPieceValue (int kind, int bit)
+    {
+        return pieceValues[kind * ON_SQUARES + bit];
+    }
+
+    public int evaluate (int occupied, int south, int kings, int player,
+        int pieceSum)
+    {
+        int southPieces = occupied & south;
+        int northPieces = occupied & ~south;
+        int empty = ~occupied;
+
+        int mobility =
+            mobility (southPieces, southPieces & kings, empty, SOUTH) -
+            mobility (northPieces, northPieces & kings, empty, NORTH);
+
+        int runaways =
+            runaways (southPieces & ~kings, occupied, 0) -
+            runaways (northPieces & ~kings, occupied, 1);
+
+        return pieceSum + weights[MOBILITY] * mobility +
+            weights[RUNAWAY] * runaways;
+    }
+
+    /**
+     * Count, for each weight, how many times the south player has it
+     * less how many times the north player has it, so that the grade of
+     * the position is the sum of the weights times the counts.
+     */
+    static void countFeatures (int occupied, int south, int kings,
+        int[] features)
+    {
+        int southPieces = occupied & south;
+        int northPieces = occupied & ~south;
+        int southMen = southPieces & ~kings;
+        int northMen = northPieces & ~kings;
+        int empty = ~occupied;
+
+        features[MAN] = Integer.bitCount (southMen) -
+            Integer.bitCount (northMen);
+        features[KING] = Integer.bitCount (southPieces & kings) -
+            Integer.bitCount (northPieces & kings);
+        features[BACK_RANK] = Integer.bitCount (southMen & SOUTH_BACK_RANK) -
+            Integer.bitCount (northMen & NORTH_BACK_RANK);
+        features[CENTER_MAN] = Integer.bitCount (southMen & CENTER) -
+            Integer.bitCount (northMen & CENTER);
+        features[CENTER_KING] =
+            Integer.bitCount (southPieces & kings & CENTER) -
+            Integer.bitCount (northPieces & kings & CENTER);
+
+        int advance = 0;
+        for (int bits = southMen & ~SOUTH_BACK_RANK; bits != 0;
+            bits &= bits - 1)
+        {
+            int row = Position.squareIndexToRow (Bitboard.bitToSquare (
+                Integer.numberOfTrailingZeros (bits)));
+            advance += SQUARES_ON_SIDE - 1 - row;
+        }
+        for (int bits = northMen & ~NORTH_BACK_RANK; bits != 0;
+            bits &= bits - 1)
+        {
+            advance -= Position.squareIndexToRow (Bitboard.bitToSquare (
+                Integer.numberOfTrailingZeros (bits)));
+        }
+        features[ADVANCE] = advance;
+
+        features[MOBILITY] =
+            mobility (southPieces, southPieces & kings, empty, SOUTH) -
+            mobility (northPieces, northPieces & kings, empty, NORTH);
+        features[RUNAWAY] =
+            runaways (southMen, occupied, 0) -
+            runaways (northMen, occupied, 1);
+    }
+
+    //
+    // Count the slides the given pieces could make.
+    //
+    private static int mobility (int pieces, int kings, int empty, int player)
+    {
+        int up = Bitboard.northMovers (pieces, kings, player);
+        int down = Bitboard.southMovers (pieces, kings, player);
+        return
+            Integer.bitCount (Bitboard.northwest (up) & empty) +
+            Integer.bitCount (Bitboard.northeast (up) & empty) +
+            Integer.bitCount (Bitboard.southwest (down) & empty) +
+            Integer.bitCount (Bitboard.southeast (down) & empty);
+    }
+
+    //
+    // Count the men whose way to the king row is clear.
+    //
+    private static int runaways (int men, int occupied, int side)
+    {
+        int[] cones = CONES[side];
+        int count = 0;
+        while (men != 0)
+        {
+            int bit = Integer.numberOfTrailingZeros (men);
+            men &= men - 1;
+            if ((cones[bit] & occupied) == 0)
+                ++count;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,216 @@
+//
+// Tablebase.java
+//
+
+package net.ech.checkers;
+
+import java.io.*;
+
+/**
+ * Endgame tables: the outcome of every position with few enough pieces on
+ * the board, as worked out by TablebaseGenerator.
+ *
+ * The tables are kept in a directory, one file per slice (see
+ * TablebaseIndex).  A slice file is either plain, one byte per position,
+ * or compressed in blocks by TablebaseCompressor.  Either way the files
+ * are mapped into memory rather than read, so that the operating system
+ * pages in only what is used, and shares it among all the processes that
+ * use the tables.  Plain slices are read straight from the mapping.  Blocks
+ * of compressed slices are decompressed as needed into a small cache,
+ * whose hits and misses are counted.
+ *
+ * A value is from the point of view of the player to move.  Zero is a draw.
+ * A positive value n is a win, on the n-th move of the player to move.  A
+ * negative value -n is a loss, with n - 1 moves left to the player to move:
+ * -1 if that player cannot move at all.
+ */
+public class Tablebase implements Constants
+{
+    /**
+     * The result of looking up a position that is not in the tables.
+     */
+    public final static int UNKNOWN = Integer.MIN_VALUE;
+
+    /**
+     * The most pieces that the tables can cover.  Positions are numbered
+     * by int within a slice, and an 8-piece slice has up to 17,553,299,400
+     * of them.
+     */
+    public final static int MAX_PIECES = 7;
+
+    // The greatest distance to a win or loss that a value can express.
+    final static int MAX_DISTANCE = 127;
+
+    // The value of a number that is not a position.
+    final static byte INVALID = -128;
+
+    /**
+     * The default number of decompressed blocks to cache.
+     */
+    public final static int DEFAULT_CACHE_BLOCKS = 256;
+
+    private TablebaseSlice[] slices =
+        new TablebaseSlice [TablebaseIndex.MAX_KEY];
+    private BlockCache cache;
+    private int maxPieces;
+
+    /**
+     * Construct empty tables.
+     */
+    public Tablebase ()
+    {
+        this.cache = new BlockCache (DEFAULT_CACHE_BLOCKS);
+    }
+
+    /**
+     * Construct tables from the slice files found in the given directory.
+     */
+    public Tablebase (File directory)
+        throws IOException
+    {
+        this (directory, DEFAULT_CACHE_BLOCKS);
+    }
+
+    /**
+     * Construct tables from the slice files found in the given directory,
+     * caching up to the given number of decompressed blocks.  Of a slice
+     * found both plain and compressed, the plain file is used.
+     */
+    public Tablebase (File directory, int cacheBlocks)
+        throws IOException
+    {
+        this.cache = new BlockCache (cacheBlocks);
+        for (int key = 0; key < TablebaseIndex.MAX_KEY; ++key)
+        {
+            if (TablebaseIndex.getPieces (key) <= MAX_PIECES)
+            {
+                File file = new File (directory, getFileName (key));
+                File compressedFile =
+                    new File (directory, getCompressedFileName (key));
+                if (file.isFile ())
+                    addSlice (key, file);
+                else if (compressedFile.isFile ())
+                    addCompressedSlice (key, compressedFile);
+            }
+        }
+    }
+
+    /**
+     * Return the name of the file that holds a plain slice: for example
+     * "tb-2-0-1-1.dat" for two south men, no south kings, one north man
+     * and one north king, south to move.
+     */
+    static String getFileName (int key)
+    {
+        return getBaseName (key) + ".dat";
+    }
+
+    /**
+     * Return the name of the file that holds a compressed slice: for
+     * example "tb-2-0-1-1.cdat".
+     */
+    static String getCompressedFileName (int key)
+    {
+        return getBaseName (key) + ".cdat";
+    }
+
+    private static String getBaseName (int key)
+    {
+        return "tb-" + TablebaseIndex.getSouthMen (key) +
+            "-" + TablebaseIndex.getSouthKings (key) +
+            "-" + TablebaseIndex.getNorthMen (key) +
+            "-" + TablebaseIndex.getNorthKings (key);
+    }
+
+    /**
+     * Map a plain slice file into memory.
+     */
+    void addSlice (int key, File file)
+        throws IOException
+    {
+        slices[key] =
+            new MappedSlice (file, TablebaseIndex.getSliceSize (key));
+        maxPieces = Math.max (maxPieces, TablebaseIndex.getPieces (key));
+    }
+
+    /**
+     * Map a compressed slice file into memory.
+     */
+    void addCompressedSlice (int key, File file)
+        throws IOException
+    {
+        slices[key] = new CompressedSlice (file, key, cache);
+        maxPieces = Math.max (maxPieces, TablebaseIndex.getPieces (key));
+    }
+
+    /**
+     * Return the number of lookups in compressed slices that found their
+     * block already decompressed.
+     */
+    public long getCacheHits ()
+    {
+        return cache.getHits ();
+    }
+
+    /**
+     * Return the number of lookups in compressed slices that had to
+     * decompress a block.
+     */
+    public long getCacheMisses ()
+    {
+        return cache.getMisses ();
+    }
+
+    /**
+     * Return the greatest number of pieces of any position in the tables.
+     */
+    public int getMaxPieces ()
+    {
+        return maxPieces;
+    }
+
+    /**
+     * Look up the value of a game state.  Return UNKNOWN if it is not in
+     * the tables.
+     */
+    public int probe (GameState gameState)
+    {
+        BoardState board = gameState.getBoardState ();
+        return probe (board.getOccupiedBits (), board.getSouthBits (),
+            board.getKingBits (), gameState.getActivePlayer ());
+    }
+
+    /**
+     * Look up the value of a position given as board masks.
+     */
+    int probe (int occupied, int south, int kings, int player)
+    {
+        if (Integer.bitCount (occupied) > maxPieces)
+            return UNKNOWN;
+
+        if (player == NORTH)
+        {
+            // Turn the board around, so that south is to move.
+            int north = occupied & ~south;
+            occupied = Integer.reverse (occupied);
+            south = Integer.reverse (north);
+            kings = Integer.reverse (kings);
+        }
+
+        TablebaseSlice slice =
+            slices[TablebaseIndex.sliceKey (occupied, south, kings)];
+        if (slice == null)
+            return UNKNOWN;
+        return slice.get (TablebaseIndex.index (occupied, south, kings));
+    }
+
+    /**
+     * Look up a value by slice and number, with south to move.  Return
+     * UNKNOWN if the slice is not in the tables.
+     */
+    int getValue (int key, int index)
+    {
+        TablebaseSlice slice = slices[key];
+        return slice == null ? UNKNOWN : slice.get (index);
+    }
+}
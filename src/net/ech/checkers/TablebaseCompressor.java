@@ -0,0 +1,87 @@
+//
+// TablebaseCompressor.java
+//
+
+package net.ech.checkers;
+
+import java.io.*;
+
+/**
+ * Compresses the plain slice files of the endgame tables in a directory
+ * into block-compressed ones (see Tablebase), which take a fraction of the
+ * space.  Lookups in compressed slices cost a decompression whenever they
+ * miss the block cache.
+ *
+ * Usage: TablebaseCompressor [-block n] [-delete] directory
+ *
+ * -block sets the number of positions per block, a power of two (4096 by
+ * default).  -delete removes each plain file once it has been compressed.
+ */
+public class TablebaseCompressor
+{
+    private final static int DEFAULT_BLOCK_SIZE = 4096;
+
+    // Do not instantiate.
+    private TablebaseCompressor ()
+    {
+    }
+
+    public static void main (String[] args)
+        throws IOException
+    {
+        int blockSize = DEFAULT_BLOCK_SIZE;
+        boolean delete = false;
+        File directory = null;
+
+        for (int i = 0; i < args.length; ++i)
+        {
+            if (args[i].equals ("-block") && i + 1 < args.length)
+                blockSize = Integer.parseInt (args[++i]);
+            else if (args[i].equals ("-delete"))
+                delete = true;
+            else if (directory == null)
+                directory = new File (args[i]);
+            else
+                usage ();
+        }
+        if (directory == null || blockSize <= 0 ||
+            Integer.bitCount (blockSize) != 1)
+        {
+            usage ();
+        }
+
+        long plainBytes = 0;
+        long compressedBytes = 0;
+        for (int key = 0; key < TablebaseIndex.MAX_KEY; ++key)
+        {
+            if (TablebaseIndex.getPieces (key) > Tablebase.MAX_PIECES)
+                continue;
+            File plainFile = new File (directory, Tablebase.getFileName (key));
+            if (!plainFile.isFile ())
+                continue;
+
+            File file =
+                new File (directory, Tablebase.getCompressedFileName (key));
+            File temp = new File (directory, file.getName () + ".tmp");
+            CompressedSlice.compress (plainFile, temp, blockSize);
+            if (!temp.renameTo (file))
+                throw new IOException (file + ": cannot rename");
+
+            plainBytes += plainFile.length ();
+            compressedBytes += file.length ();
+            System.out.println (file.getName () + ": " + plainFile.length () +
+                " -> " + file.length () + " bytes");
+            if (delete && !plainFile.delete ())
+                throw new IOException (plainFile + ": cannot delete");
+        }
+        System.out.println ("total: " + plainBytes + " -> " +
+            compressedBytes + " bytes");
+    }
+
+    private static void usage ()
+    {
+        System.err.println (
+            "usage: TablebaseCompressor [-block n] [-delete] directory");
+        System.exit (1);
+    }
+}
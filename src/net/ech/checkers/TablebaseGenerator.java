@@ -0,0 +1,404 @@
+//
+// TablebaseGenerator.java
+//
+
+package net.ech.checkers;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Builds the endgame tables read by Tablebase, for every position with up
+ * to a given number of pieces.
+ *
+ * Usage: TablebaseGenerator [-threads n] pieces directory
+ *
+ * The slices are worked out in groups having the same numbers of pieces
+ * and of men, fewest first.  A move leads either to a position in the same
+ * group, or, by a capture or a crowning, to one in a group already done.
+ * The values of each group are found by passes over all of its positions,
+ * each pass grading every position by the values of the positions its
+ * moves lead to, until a pass changes nothing.  Positions left undecided
+ * are draws.  The positions of a pass are divided among threads.
+ *
+ * The values of the group being worked out are kept in memory, a byte per
+ * position, all at once.  That is under 1 GB for the largest group of 6
+ * pieces, but over 10 GB for the largest of 7, whose largest slice alone
+ * is 1.5 GB; the heap must be sized to match.
+ *
+ * Each slice is written to its own file as soon as its group is done.
+ * Groups whose files all exist, plain or compressed, are not worked out
+ * again, so that an interrupted run may be resumed.
+ */
+public class TablebaseGenerator implements Constants
+{
+    // Positions per task.
+    private final static int CHUNK_SIZE = 1 << 16;
+
+    private File directory;
+    private ForkJoinPool pool;
+    private PrintStream logStream = System.out;
+
+    // Slices done, and values of the group being worked out.
+    private Tablebase tablebase = new Tablebase ();
+    private byte[][] group = new byte [TablebaseIndex.MAX_KEY][];
+    private volatile boolean changed;
+
+    public static void main (String[] args)
+        throws IOException
+    {
+        int threads = Runtime.getRuntime ().availableProcessors ();
+        int pieces = -1;
+        File directory = null;
+
+        for (int i = 0; i < args.length; ++i)
+        {
+            if (args[i].equals ("-threads") && i + 1 < args.length)
+                threads = Integer.parseInt (args[++i]);
+            else if (pieces < 0)
+                pieces = Integer.parseInt (args[i]);
+            else if (directory == null)
+                directory = new File (args[i]);
+            else
+                usage ();
+        }
+        if (pieces < 2 || pieces > Tablebase.MAX_PIECES || directory == null)
+            usage ();
+
+        TablebaseGenerator generator =
+            new TablebaseGenerator (directory, threads);
+        try
+        {
+            generator.generate (pieces);
+        }
+        finally
+        {
+            generator.close ();
+        }
+    }
+
+    private static void usage ()
+    {
+        System.err.println (
+            "usage: TablebaseGenerator [-threads n] pieces directory");
+        System.err.println (
+            "  pieces: 2 to " + Tablebase.MAX_PIECES);
+        System.exit (1);
+    }
+
+    public TablebaseGenerator (File directory, int threads)
+    {
+        this.directory = directory;
+        this.pool = new ForkJoinPool (Math.max (threads, 1));
+    }
+
+    /**
+     * Set where to report progress, or null for nowhere.
+     */
+    public void setLogStream (PrintStream logStream)
+    {
+        this.logStream = logStream;
+    }
+
+    /**
+     * Release the threads.
+     */
+    public void close ()
+    {
+        pool.shutdown ();
+    }
+
+    /**
+     * Build the tables for every position with up to 'maxPieces' pieces.
+     */
+    public void generate (int maxPieces)
+        throws IOException
+    {
+        if (!directory.isDirectory () && !directory.mkdirs ())
+            throw new IOException (directory + ": cannot create");
+
+        for (int pieces = 2; pieces <= maxPieces; ++pieces)
+        {
+            for (int men = 0; men <= pieces; ++men)
+            {
+                generateGroup (pieces, men);
+            }
+        }
+    }
+
+    //
+    // Work out the slices with the given numbers of pieces and men.
+    //
+    private void generateGroup (int pieces, int men)
+        throws IOException
+    {
+        List keys = new ArrayList ();
+        for (int southMen = 0; southMen <= men; ++southMen)
+        {
+            int northMen = men - southMen;
+            for (int southKings = 0; southKings <= pieces - men; ++southKings)
+            {
+                int northKings = pieces - men - southKings;
+                if (southMen + southKings > 0 && northMen + northKings > 0 &&
+                    southMen + southKings <= STARTING_PIECES_PER_PLAYER &&
+                    northMen + northKings <= STARTING_PIECES_PER_PLAYER)
+                {
+                    keys.add (Integer.valueOf (TablebaseIndex.sliceKey (
+                        southMen, southKings, northMen, northKings)));
+                }
+            }
+        }
+
+        boolean done = true;
+        for (Iterator it = keys.iterator (); it.hasNext (); )
+        {
+            int key = ((Integer) it.next ()).intValue ();
+            done &=
+                getFile (key).isFile () || getCompressedFile (key).isFile ();
+        }
+        if (done)
+        {
+            for (Iterator it = keys.iterator (); it.hasNext (); )
+            {
+                int key = ((Integer) it.next ()).intValue ();
+                if (getFile (key).isFile ())
+                    tablebase.addSlice (key, getFile (key));
+                else
+                    tablebase.addCompressedSlice (key, getCompressedFile (key));
+            }
+            log (pieces + " pieces, " + men + " men: already done");
+            return;
+        }
+
+        long start = System.currentTimeMillis ();
+        for (Iterator it = keys.iterator (); it.hasNext (); )
+        {
+            int key = ((Integer) it.next ()).intValue ();
+            long size = TablebaseIndex.getSliceSize (key);
+            if (size > Integer.MAX_VALUE)
+                throw new IllegalStateException ("slice too large");
+            group[key] = new byte [(int) size];
+        }
+
+        int passes = 0;
+        do
+        {
+            changed = false;
+            runPass (keys);
+            ++passes;
+        }
+        while (changed);
+
+        for (Iterator it = keys.iterator (); it.hasNext (); )
+        {
+            int key = ((Integer) it.next ()).intValue ();
+            File file = writeSlice (key);
+            logSlice (key);
+            group[key] = null;
+            tablebase.addSlice (key, file);
+        }
+        log (pieces + " pieces, " + men + " men: " + passes + " passes, " +
+            (System.currentTimeMillis () - start) + " ms");
+    }
+
+    private File getFile (int key)
+    {
+        return new File (directory, Tablebase.getFileName (key));
+    }
+
+    private File getCompressedFile (int key)
+    {
+        return new File (directory, Tablebase.getCompressedFileName (key));
+    }
+
+    //
+    // Grade every position of the group once.
+    //
+    private void runPass (List keys)
+    {
+        final List tasks = new ArrayList ();
+        for (Iterator it = keys.iterator (); it.hasNext (); )
+        {
+            int key = ((Integer) it.next ()).intValue ();
+            int size = group[key].length;
+            for (int start = 0; start < size; start += CHUNK_SIZE)
+            {
+                tasks.add (new PassTask (
+                    key, start, Math.min (start + CHUNK_SIZE, size)));
+            }
+        }
+
+        pool.invoke (new RecursiveAction ()
+        {
+            protected void compute ()
+            {
+                invokeAll (tasks);
+            }
+        });
+    }
+
+    private class PassTask extends RecursiveAction
+    {
+        private final static long serialVersionUID = 1L;
+
+        private int key;
+        private int start;
+        private int end;
+
+        PassTask (int key, int start, int end)
+        {
+            this.key = key;
+            this.start = start;
+            this.end = end;
+        }
+
+        protected void compute ()
+        {
+            byte[] values = group[key];
+            int[] masks = new int [3];
+            long[] moves = new long [PackedMove.MAX_MOVES];
+            SearchBoard board = new SearchBoard (0, 0, 0, SOUTH);
+            boolean changedHere = false;
+
+            for (int index = start; index < end; ++index)
+            {
+                if (values[index] == Tablebase.INVALID)
+                    continue;
+
+                int value;
+                if (TablebaseIndex.position (key, index, masks))
+                {
+                    board.setPosition (masks[0], masks[1], masks[2], SOUTH);
+                    value = grade (board, moves);
+                }
+                else
+                {
+                    value = Tablebase.INVALID;
+                }
+
+                if (values[index] != value)
+                {
+                    values[index] = (byte) value;
+                    changedHere = true;
+                }
+            }
+
+            if (changedHere)
+                changed = true;
+        }
+    }
+
+    //
+    // Grade a position, south to move, by the values of the positions that
+    // its moves lead to: a win if any of those is lost to the opponent, a
+    // loss if all of them are won by the opponent, else undecided.
+    //
+    private int grade (SearchBoard board, long[] moves)
+    {
+        int count = board.generateMoves (moves, 0);
+        if (count == 0)
+            return -1;
+
+        int win = Tablebase.MAX_DISTANCE + 1;
+        int loss = 0;
+        boolean allWon = true;
+        for (int i = 0; i < count; ++i)
+        {
+            board.makeMove (moves[i]);
+            int value = lookUp (board.getOccupiedBits (),
+                board.getSouthBits (), board.getKingBits ());
+            board.unmakeMove ();
+
+            if (value < 0)
+                win = Math.min (win, -value);
+            else if (value == 0)
+                allWon = false;
+            else
+                loss = Math.max (loss, value);
+        }
+
+        if (win <= Tablebase.MAX_DISTANCE)
+            return win;
+        if (allWon)
+            return -Math.min (loss + 1, Tablebase.MAX_DISTANCE);
+        return 0;
+    }
+
+    //
+    // Look up the value of a position, north to move, in the group being
+    // worked out or in the slices already done.
+    //
+    private int lookUp (int occupied, int south, int kings)
+    {
+        int north = occupied & ~south;
+        if (north == 0)
+            return -1;
+
+        // Turn the board around, so that south is to move.
+        occupied = Integer.reverse (occupied);
+        south = Integer.reverse (north);
+        kings = Integer.reverse (kings);
+
+        int key = TablebaseIndex.sliceKey (occupied, south, kings);
+        int index = TablebaseIndex.index (occupied, south, kings);
+        byte[] values = group[key];
+        if (values != null)
+            return values[index];
+
+        int value = tablebase.getValue (key, index);
+        if (value == Tablebase.UNKNOWN)
+            throw new IllegalStateException ("missing slice " + key);
+        return value;
+    }
+
+    //
+    // Write a slice to a temporary file, then give the file its proper
+    // name, so that a partly written slice is never taken for done.
+    //
+    private File writeSlice (int key)
+        throws IOException
+    {
+        File file = getFile (key);
+        File temp = new File (directory, file.getName () + ".tmp");
+        OutputStream out = new FileOutputStream (temp);
+        try
+        {
+            out.write (group[key]);
+        }
+        finally
+        {
+            out.close ();
+        }
+        if (!temp.renameTo (file))
+            throw new IOException (file + ": cannot rename");
+        return file;
+    }
+
+    private void logSlice (int key)
+    {
+        long wins = 0;
+        long losses = 0;
+        long draws = 0;
+        byte[] values = group[key];
+        for (int i = 0; i < values.length; ++i)
+        {
+            if (values[i] == Tablebase.INVALID)
+                continue;
+            if (values[i] > 0)
+                ++wins;
+            else if (values[i] < 0)
+                ++losses;
+            else
+                ++draws;
+        }
+        log (Tablebase.getFileName (key) + ": " + wins + " wins, " +
+            losses + " losses, " + draws + " draws");
+    }
+
+    private void log (String message)
+    {
+        if (logStream != null)
+            logStream.println (message);
+    }
+}
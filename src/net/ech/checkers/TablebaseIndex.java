@@ -0,0 +1,226 @@
+//
+// TablebaseIndex.java
+//
+
+package net.ech.checkers;
+
+//
+// Numbering of the positions in the endgame tables.  The tables are cut
+// into slices, each holding every position with given numbers of men and
+// kings on each side and the south player to move.  A position with the
+// north player to move is looked up turned half around, colors swapped.
+//
+// Within a slice, a position is numbered by the squares of the south men,
+// then of the north men, then of the south kings, then of the north kings,
+// each set numbered in the combinatorial number system.  A man never stands
+// on its own king row, so the men of each side range over 28 squares.  The
+// kings range over the squares left free by the men, and the north kings
+// over those left free by the south kings.  Numbers at which south and
+// north men would share a square are not positions, and are marked invalid
+// in the tables.
+//
+final class TablebaseIndex implements Constants
+{
+    // Men may not stand on their own king row.
+    private final static int SOUTH_MEN_SQUARES = 0x0fffffff;
+    private final static int NORTH_MEN_SQUARES = 0xfffffff0;
+    private final static int MEN_SQUARES = ON_SQUARES - 4;
+
+    /**
+     * The bound on slice keys.
+     */
+    final static int MAX_KEY = 1 << 16;
+
+    private final static int[][] CHOOSE =
+        new int [ON_SQUARES + 1][ON_SQUARES + 1];
+    static
+    {
+        for (int n = 0; n <= ON_SQUARES; ++n)
+        {
+            CHOOSE[n][0] = 1;
+            for (int k = 1; k <= n; ++k)
+            {
+                CHOOSE[n][k] = CHOOSE[n - 1][k - 1] + CHOOSE[n - 1][k];
+            }
+        }
+    }
+
+    // Do not instantiate.
+    private TablebaseIndex ()
+    {
+    }
+
+    private static int choose (int n, int k)
+    {
+        return k < 0 || k > n ? 0 : CHOOSE[n][k];
+    }
+
+    /**
+     * Return the key of the slice with the given numbers of pieces.
+     * Each number is less than 16.
+     */
+    static int sliceKey (int southMen, int southKings,
+        int northMen, int northKings)
+    {
+        return southMen << 12 | southKings << 8 | northMen << 4 | northKings;
+    }
+
+    /**
+     * Return the key of the slice to which a position belongs.
+     */
+    static int sliceKey (int occupied, int south, int kings)
+    {
+        int north = occupied & ~south;
+        return sliceKey (
+            Integer.bitCount (south & ~kings),
+            Integer.bitCount (south & kings),
+            Integer.bitCount (north & ~kings),
+            Integer.bitCount (north & kings));
+    }
+
+    static int getSouthMen (int key)
+    {
+        return key >> 12 & 15;
+    }
+
+    static int getSouthKings (int key)
+    {
+        return key >> 8 & 15;
+    }
+
+    static int getNorthMen (int key)
+    {
+        return key >> 4 & 15;
+    }
+
+    static int getNorthKings (int key)
+    {
+        return key & 15;
+    }
+
+    static int getPieces (int key)
+    {
+        return getSouthMen (key) + getSouthKings (key) +
+            getNorthMen (key) + getNorthKings (key);
+    }
+
+    /**
+     * Return the number of positions in a slice, valid or not.
+     */
+    static long getSliceSize (int key)
+    {
+        int free = ON_SQUARES - getSouthMen (key) - getNorthMen (key);
+        return (long) choose (MEN_SQUARES, getSouthMen (key)) *
+            choose (MEN_SQUARES, getNorthMen (key)) *
+            choose (free, getSouthKings (key)) *
+            choose (free - getSouthKings (key), getNorthKings (key));
+    }
+
+    /**
+     * Return the number of a position, south to move, within its slice.
+     */
+    static int index (int occupied, int south, int kings)
+    {
+        int southMen = south & ~kings;
+        int southKings = south & kings;
+        int northMen = occupied & ~south & ~kings;
+        int northKings = occupied & ~south & kings;
+        int free = ~(southMen | northMen);
+        int freeCount = ON_SQUARES - Integer.bitCount (southMen | northMen);
+
+        int index = rank (southMen, SOUTH_MEN_SQUARES);
+        index = index * choose (MEN_SQUARES, Integer.bitCount (northMen)) +
+            rank (northMen, NORTH_MEN_SQUARES);
+        index = index * choose (freeCount, Integer.bitCount (southKings)) +
+            rank (southKings, free);
+        index = index *
+            choose (freeCount - Integer.bitCount (southKings),
+                Integer.bitCount (northKings)) +
+            rank (northKings, free & ~southKings);
+        return index;
+    }
+
+    /**
+     * Find the position, south to move, with the given number in the given
+     * slice.  Write its occupied, south and king masks to 'masks'.  Return
+     * false if the number is not that of a valid position.
+     */
+    static boolean position (int key, int index, int[] masks)
+    {
+        int southMen = getSouthMen (key);
+        int southKings = getSouthKings (key);
+        int northMen = getNorthMen (key);
+        int northKings = getNorthKings (key);
+        int freeCount = ON_SQUARES - southMen - northMen;
+
+        int count = choose (freeCount - southKings, northKings);
+        int northKingsRank = index % count;
+        index /= count;
+        count = choose (freeCount, southKings);
+        int southKingsRank = index % count;
+        index /= count;
+        count = choose (MEN_SQUARES, northMen);
+        int northMenRank = index % count;
+        int southMenRank = index / count;
+
+        int southMenBits = unrank (southMenRank, southMen, SOUTH_MEN_SQUARES);
+        int northMenBits = unrank (northMenRank, northMen, NORTH_MEN_SQUARES);
+        if ((southMenBits & northMenBits) != 0)
+            return false;
+
+        int free = ~(southMenBits | northMenBits);
+        int southKingBits = unrank (southKingsRank, southKings, free);
+        int northKingBits =
+            unrank (northKingsRank, northKings, free & ~southKingBits);
+
+        masks[0] = southMenBits | northMenBits | southKingBits | northKingBits;
+        masks[1] = southMenBits | southKingBits;
+        masks[2] = southKingBits | northKingBits;
+        return true;
+    }
+
+    //
+    // Number a set of pieces as a combination of the given squares, in
+    // which they all stand.
+    //
+    private static int rank (int pieces, int squares)
+    {
+        int index = 0;
+        int i = 0;
+        for (; pieces != 0; pieces &= pieces - 1)
+        {
+            int lowest = pieces & -pieces;
+            index += choose (Integer.bitCount (squares & (lowest - 1)), ++i);
+        }
+        return index;
+    }
+
+    //
+    // Find the combination of 'count' of the given squares that has the
+    // given number.
+    //
+    private static int unrank (int index, int count, int squares)
+    {
+        int pieces = 0;
+        for (int i = count; i > 0; --i)
+        {
+            // Find the greatest r such that C(r, i) <= index.
+            int r = i - 1;
+            while (choose (r + 1, i) <= index)
+                ++r;
+            index -= choose (r, i);
+            pieces |= nthSquare (squares, r);
+        }
+        return pieces;
+    }
+
+    //
+    // Return the mask of the n-th lowest of the given squares.
+    //
+    private static int nthSquare (int squares, int n)
+    {
+        for (; n > 0; --n)
+            squares &= squares - 1;
+        return squares & -squares;
+    }
+}
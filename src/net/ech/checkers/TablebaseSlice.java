@@ -0,0 +1,17 @@
+//
+// TablebaseSlice.java
+//
+
+package net.ech.checkers;
+
+/**
+ * One slice of the endgame tables (see TablebaseIndex), however stored.
+ * Implementations must allow concurrent lookups.
+ */
+interface TablebaseSlice
+{
+    /**
+     * Return the value of the position with the given number.
+     */
+    int get (int index);
+}
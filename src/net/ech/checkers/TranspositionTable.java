@@ -0,0 +1,186 @@
+//
+// TranspositionTable.java
+//
+
+package net.ech.checkers;
+
+/**
+ * A fixed-size table of search results, keyed by Zobrist hash, so that a
+ * position reached by more than one line of play is searched only once.
+ *
+ * Entries live in a long[]: two longs per entry, two entries per bucket.
+ * The first entry of a bucket keeps the deepest result of the current
+ * search; the second is replaced by whatever else lands in the bucket.
+ *
+ * The table may be shared by concurrent searches without locking.  Each
+ * entry holds its packed data and the XOR of that data with the hash key.
+ * An entry half written by one thread as another reads it fails to match
+ * the key, and is taken for a miss.  The hit and miss counts are not
+ * synchronized, and are approximate under concurrent use.
+ */
+public class TranspositionTable
+{
+    //
+    // Bound types.  An empty entry has no bound type.
+    //
+    final static int EXACT = 1;
+    final static int LOWER = 2;         // the score is at least this
+    final static int UPPER = 3;         // the score is at most this
+
+    private final static int LONGS_PER_ENTRY = 2;
+    private final static int LONGS_PER_BUCKET = 2 * LONGS_PER_ENTRY;
+
+    //
+    // Layout of the data word.  The move is stored without its hop count,
+    // which is the number of captured squares.
+    //
+    private final static long MOVE_MASK = (1L << 42) - 1;
+    private final static int SCORE_SHIFT = 42;
+    private final static int SCORE_BIAS = 1 << 11;
+    private final static int DEPTH_SHIFT = 54;
+    private final static int BOUND_SHIFT = 60;
+    private final static int AGE_SHIFT = 62;
+
+    /**
+     * The greatest depth that an entry can record.
+     */
+    final static int MAX_DEPTH = 63;
+
+    private long[] entries;
+    private int bucketMask;
+    private int age;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * Construct a table occupying about the given number of megabytes.
+     */
+    public TranspositionTable (int megabytes)
+    {
+        long bytes = (long) Math.max (megabytes, 1) << 20;
+        int buckets = Integer.highestOneBit (
+            (int) Math.min (bytes / (LONGS_PER_BUCKET * 8), 1 << 26));
+        entries = new long [buckets * LONGS_PER_BUCKET];
+        bucketMask = buckets - 1;
+    }
+
+    /**
+     * Begin a new search.  Results of earlier searches remain usable but
+     * give way to new ones.
+     */
+    public void newSearch ()
+    {
+        age = (age + 1) & 3;
+    }
+
+    /**
+     * Forget everything.
+     */
+    public void clear ()
+    {
+        java.util.Arrays.fill (entries, 0);
+    }
+
+    public long getHits ()
+    {
+        return hits;
+    }
+
+    public long getMisses ()
+    {
+        return misses;
+    }
+
+    /**
+     * Look up a position.  Return its data word, or zero if it is absent.
+     */
+    long probe (long key)
+    {
+        int index = bucketIndex (key);
+        long data = entries[index + 1];
+        if (data != 0 && (entries[index] ^ data) == key)
+        {
+            ++hits;
+            return data;
+        }
+        data = entries[index + 3];
+        if (data != 0 && (entries[index + 2] ^ data) == key)
+        {
+            ++hits;
+            return data;
+        }
+        ++misses;
+        return 0;
+    }
+
+    /**
+     * Record the result of searching a position to the given depth.
+     */
+    void store (long key, int depth, int bound, int score, long move)
+    {
+        long data =
+            (move & MOVE_MASK) |
+            ((long) (score + SCORE_BIAS) << SCORE_SHIFT) |
+            ((long) Math.min (depth, MAX_DEPTH) << DEPTH_SHIFT) |
+            ((long) bound << BOUND_SHIFT) |
+            ((long) age << AGE_SHIFT);
+
+        int index = bucketIndex (key);
+        long old = entries[index + 1];
+        if (old == 0 || (entries[index] ^ old) == key ||
+            getAge (old) != age || depth >= getDepth (old))
+        {
+            entries[index] = key ^ data;
+            entries[index + 1] = data;
+        }
+        else
+        {
+            entries[index + 2] = key ^ data;
+            entries[index + 3] = data;
+        }
+    }
+
+    private int bucketIndex (long key)
+    {
+        return ((int) (key >>> 32) & bucketMask) * LONGS_PER_BUCKET;
+    }
+
+    //
+    // Decoding of data words.
+    //
+
+    static int getScore (long data)
+    {
+        return (int) (data >>> SCORE_SHIFT & 0xfff) - SCORE_BIAS;
+    }
+
+    static int getDepth (long data)
+    {
+        return (int) (data >>> DEPTH_SHIFT) & MAX_DEPTH;
+    }
+
+    static int getBound (long data)
+    {
+        return (int) (data >>> BOUND_SHIFT) & 3;
+    }
+
+    private static int getAge (long data)
+    {
+        return (int) (data >>> AGE_SHIFT) & 3;
+    }
+
+    /**
+     * Return the best move recorded, as a packed move, or zero if none.
+     */
+    static long getMove (long data)
+    {
+        long move = data & MOVE_MASK;
+        if (move == 0)
+            return 0;
+        return PackedMove.pack (
+            PackedMove.getOriginBit (move), PackedMove.getTargetBit (move),
+            Integer.bitCount (PackedMove.getCaptured (move)),
+            PackedMove.getCaptured (move));
+    }
+}
@@ -0,0 +1,414 @@
+//
+// WeightTuner.java
+//
+
+package net.ech.checkers;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Fits the weights of StandardEvaluator to the outcomes of recorded games,
+ * in the manner of the Texel tuning method, and writes them to a weights
+ * file for AutoPlayer.
+ *
+ * Usage: WeightTuner [options] record-file ...
+ *
+ *   -out file         weights file to write (weights.txt)
+ *   -weights file     weights to start from (the defaults)
+ *   -iterations n     passes of gradient descent (100)
+ *   -rate r           step size, in weight units (1.0)
+ *   -k k              scale of grades to win chances (fitted first)
+ *   -skip-plies n     positions to skip at the start of each game (8)
+ *   -threads n        threads to use (one per processor)
+ *
+ * Each position of each finished game, except the first few and those in
+ * which the player to move must capture, is a sample.  The chance that
+ * the south player wins from a position is predicted from its grade g as
+ * 1 / (1 + exp (-k g)), and the error is the mean square difference
+ * between the predictions and the results: 1 for a south win, 1/2 for a
+ * draw, 0 for a loss.  First k is fitted to the starting weights, then the
+ * weights are fitted, with k held, by Adam gradient descent.  The grade is
+ * linear in the weights (see StandardEvaluator.countFeatures), so each
+ * pass over the samples yields both the error and its gradient.
+ *
+ * The records are streamed from the files on every pass, never held in
+ * memory, and the games are divided among the threads in batches.
+ */
+public class WeightTuner implements Constants
+{
+    private final static int BATCH_GAMES = 256;
+
+    // Adam parameters.
+    private final static double BETA1 = 0.9;
+    private final static double BETA2 = 0.999;
+    private final static double EPSILON = 1e-8;
+
+    private File[] files;
+    private int skipPlies = 8;
+    private int threads = Runtime.getRuntime ().availableProcessors ();
+    private ExecutorService executor;
+    private PrintStream logStream = System.out;
+
+    public static void main (String[] args)
+        throws Exception
+    {
+        File out = new File ("weights.txt");
+        int[] start = StandardEvaluator.getDefault ().getWeights ();
+        int iterations = 100;
+        double rate = 1.0;
+        double k = 0;
+        int skipPlies = 8;
+        int threads = Runtime.getRuntime ().availableProcessors ();
+        List files = new ArrayList ();
+
+        for (int i = 0; i < args.length; ++i)
+        {
+            String arg = args[i];
+            if (arg.startsWith ("-") && i + 1 == args.length)
+                usage ();
+            if (arg.equals ("-out"))
+                out = new File (args[++i]);
+            else if (arg.equals ("-weights"))
+                start = StandardEvaluator.read (new File (args[++i]))
+                    .getWeights ();
+            else if (arg.equals ("-iterations"))
+                iterations = Integer.parseInt (args[++i]);
+            else if (arg.equals ("-rate"))
+                rate = Double.parseDouble (args[++i]);
+            else if (arg.equals ("-k"))
+                k = Double.parseDouble (args[++i]);
+            else if (arg.equals ("-skip-plies"))
+                skipPlies = Integer.parseInt (args[++i]);
+            else if (arg.equals ("-threads"))
+                threads = Integer.parseInt (args[++i]);
+            else if (arg.startsWith ("-"))
+                usage ();
+            else
+                files.add (new File (arg));
+        }
+        if (files.isEmpty ())
+            usage ();
+
+        WeightTuner tuner = new WeightTuner (
+            (File[]) files.toArray (new File [files.size ()]),
+            skipPlies, threads);
+        try
+        {
+            double[] weights = new double [start.length];
+            for (int i = 0; i < start.length; ++i)
+                weights[i] = start[i];
+            if (k <= 0)
+                k = tuner.fitK (weights);
+            weights = tuner.tune (weights, k, iterations, rate);
+
+            int[] rounded = new int [weights.length];
+            for (int i = 0; i < weights.length; ++i)
+                rounded[i] = (int) Math.round (weights[i]);
+            new StandardEvaluator (rounded).write (out);
+            System.out.println ("Wrote " + out);
+        }
+        finally
+        {
+            tuner.close ();
+        }
+    }
+
+    private static void usage ()
+    {
+        System.err.println ("usage: WeightTuner [-out file] " +
+            "[-weights file] [-iterations n] [-rate r] [-k k] " +
+            "[-skip-plies n] [-threads n] record-file ...");
+        System.exit (1);
+    }
+
+    public WeightTuner (File[] files, int skipPlies, int threads)
+    {
+        this.files = files;
+        this.skipPlies = skipPlies;
+        this.threads = Math.max (threads, 1);
+        this.executor = Executors.newFixedThreadPool (this.threads);
+    }
+
+    /**
+     * Set where to report progress, or null for nowhere.
+     */
+    public void setLogStream (PrintStream logStream)
+    {
+        this.logStream = logStream;
+    }
+
+    /**
+     * Release the threads.
+     */
+    public void close ()
+    {
+        executor.shutdown ();
+    }
+
+    /**
+     * Find the scale k that best predicts the results from the grades
+     * given by the weights, by golden section search.
+     */
+    public double fitK (double[] weights)
+        throws IOException
+    {
+        double phi = (Math.sqrt (5) - 1) / 2;
+        double low = 0.0001;
+        double high = 0.1;
+        double a = high - phi * (high - low);
+        double b = low + phi * (high - low);
+        double errorA = pass (weights, a, null).getError ();
+        double errorB = pass (weights, b, null).getError ();
+        while (high - low > 0.00001)
+        {
+            if (errorA < errorB)
+            {
+                high = b;
+                b = a;
+                errorB = errorA;
+                a = high - phi * (high - low);
+                errorA = pass (weights, a, null).getError ();
+            }
+            else
+            {
+                low = a;
+                a = b;
+                errorA = errorB;
+                b = low + phi * (high - low);
+                errorB = pass (weights, b, null).getError ();
+            }
+        }
+        double k = (low + high) / 2;
+        log ("k = " + k + ", error " + Math.min (errorA, errorB));
+        return k;
+    }
+
+    /**
+     * Fit the weights, starting from those given, with k held.  Return
+     * the weights with the least error seen.
+     */
+    public double[] tune (double[] start, double k, int iterations,
+        double rate)
+        throws IOException
+    {
+        int n = start.length;
+        double[] weights = start.clone ();
+        double[] best = start.clone ();
+        double bestError = Double.MAX_VALUE;
+        double[] m = new double [n];
+        double[] v = new double [n];
+
+        for (int t = 1; t <= iterations; ++t)
+        {
+            double[] gradient = new double [n];
+            Sums sums = pass (weights, k, gradient);
+            double error = sums.getError ();
+            if (error < bestError)
+            {
+                bestError = error;
+                best = weights.clone ();
+            }
+            log ("iteration " + t + ": error " + error + " over " +
+                sums.count + " positions; " + format (weights));
+
+            for (int i = 0; i < n; ++i)
+            {
+                double g = gradient[i] / sums.count;
+                m[i] = BETA1 * m[i] + (1 - BETA1) * g;
+                v[i] = BETA2 * v[i] + (1 - BETA2) * g * g;
+                double mHat = m[i] / (1 - Math.pow (BETA1, t));
+                double vHat = v[i] / (1 - Math.pow (BETA2, t));
+                weights[i] -= rate * mHat / (Math.sqrt (vHat) + EPSILON);
+            }
+        }
+        return best;
+    }
+
+    private static String format (double[] weights)
+    {
+        StringBuffer buf = new StringBuffer ();
+        for (int i = 0; i < weights.length; ++i)
+        {
+            if (i > 0)
+                buf.append (' ');
+            buf.append (StandardEvaluator.WEIGHT_NAMES[i]);
+            buf.append ('=');
+            buf.append (Math.round (weights[i] * 10) / 10.0);
+        }
+        return buf.toString ();
+    }
+
+    private void log (String message)
+    {
+        if (logStream != null)
+            logStream.println (message);
+    }
+
+    //
+    // Squared errors and gradient, summed over some of the samples.
+    //
+    private static class Sums
+    {
+        long count;
+        double squaredError;
+        double[] gradient;
+
+        double getError ()
+        {
+            return count == 0 ? 0 : squaredError / count;
+        }
+
+        void add (Sums that)
+        {
+            count += that.count;
+            squaredError += that.squaredError;
+            if (gradient != null)
+            {
+                for (int i = 0; i < gradient.length; ++i)
+                    gradient[i] += that.gradient[i];
+            }
+        }
+    }
+
+    //
+    // Read all the games, sharing them out among the threads in batches.
+    // Return the summed squared error and, if 'gradient' is not null, add
+    // the summed gradient of the squared error into it.  No more than two
+    // batches per thread are read ahead of the threads.
+    //
+    private Sums pass (double[] weights, double k, double[] gradient)
+        throws IOException
+    {
+        Sums total = new Sums ();
+        total.gradient = gradient;
+        LinkedList pending = new LinkedList ();
+
+        for (int f = 0; f < files.length; ++f)
+        {
+            GameRecordReader reader = new GameRecordReader (files[f]);
+            try
+            {
+                List batch = new ArrayList ();
+                GameRecord record;
+                while ((record = reader.read ()) != null)
+                {
+                    if (record.getResult () == GameRecord.UNFINISHED)
+                        continue;
+                    batch.add (record);
+                    if (batch.size () == BATCH_GAMES)
+                    {
+                        submit (batch, weights, k, gradient != null,
+                            pending, total);
+                        batch = new ArrayList ();
+                    }
+                }
+                if (!batch.isEmpty ())
+                {
+                    submit (batch, weights, k, gradient != null, pending,
+                        total);
+                }
+            }
+            finally
+            {
+                reader.close ();
+            }
+        }
+
+        while (!pending.isEmpty ())
+            total.add (take ((Future) pending.removeFirst ()));
+        return total;
+    }
+
+    private void submit (final List batch, final double[] weights,
+        final double k, final boolean wantGradient, LinkedList pending,
+        Sums total)
+    {
+        while (pending.size () >= 2 * threads)
+            total.add (take ((Future) pending.removeFirst ()));
+        pending.add (executor.submit (new Callable ()
+        {
+            public Object call ()
+            {
+                return score (batch, weights, k, wantGradient);
+            }
+        }));
+    }
+
+    private static Sums take (Future future)
+    {
+        try
+        {
+            return (Sums) future.get ();
+        }
+        catch (InterruptedException e)
+        {
+            throw new IllegalStateException (e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new IllegalStateException (e.getCause ());
+        }
+    }
+
+    //
+    // Sum the squared errors, and their gradient, over the samples of a
+    // batch of games.
+    //
+    private Sums score (List batch, double[] weights, double k,
+        boolean wantGradient)
+    {
+        int n = weights.length;
+        Sums sums = new Sums ();
+        if (wantGradient)
+            sums.gradient = new double [n];
+        int[] features = new int [n];
+
+        for (Iterator it = batch.iterator (); it.hasNext (); )
+        {
+            GameRecord record = (GameRecord) it.next ();
+            double result =
+                record.getResult () == GameRecord.SOUTH_WON ? 1 :
+                record.getResult () == GameRecord.NORTH_WON ? 0 :
+                0.5;
+
+            GameState[] gameStates = record.replay ();
+            for (int ply = skipPlies; ply < gameStates.length; ++ply)
+            {
+                GameState gameState = gameStates[ply];
+                int player = gameState.getActivePlayer ();
+                if (player == NULL_PLAYER)
+                    continue;
+                BoardState board = gameState.getBoardState ();
+                int occupied = board.getOccupiedBits ();
+                int south = board.getSouthBits ();
+                int kings = board.getKingBits ();
+
+                // Grades are meant for quiet positions.
+                if (Bitboard.jumpers (occupied, south, kings, player) != 0)
+                    continue;
+
+                StandardEvaluator.countFeatures (occupied, south, kings,
+                    features);
+                double grade = 0;
+                for (int i = 0; i < n; ++i)
+                    grade += weights[i] * features[i];
+
+                double predicted = 1 / (1 + Math.exp (-k * grade));
+                double difference = predicted - result;
+                sums.squaredError += difference * difference;
+                ++sums.count;
+
+                if (wantGradient)
+                {
+                    double slope =
+                        2 * difference * predicted * (1 - predicted) * k;
+                    for (int i = 0; i < n; ++i)
+                        sums.gradient[i] += slope * features[i];
+                }
+            }
+        }
+        return sums;
+    }
+}
@@ -0,0 +1,90 @@
+//
+// Zobrist.java
+//
+
+package net.ech.checkers;
+
+import java.util.Random;
+
+//
+// Zobrist hash keys.  The key of a position is the XOR of one random
+// number per piece (by square, color and rank), and another if the north
+// player is to move, so that it can be updated as pieces come and go.
+// The numbers come from a fixed seed: keys are stable from run to run,
+// and may be stored in files.
+//
+final class Zobrist implements Constants
+{
+    private final static long SEED = 0x636865636b657273L;
+
+    private final static long[] SOUTH_MEN = new long [ON_SQUARES];
+    private final static long[] SOUTH_KINGS = new long [ON_SQUARES];
+    private final static long[] NORTH_MEN = new long [ON_SQUARES];
+    private final static long[] NORTH_KINGS = new long [ON_SQUARES];
+
+    /**
+     * XOR'ed into the key when the north player is to move.
+     */
+    final static long NORTH_TO_MOVE;
+
+    static
+    {
+        Random random = new Random (SEED);
+        for (int bit = 0; bit < ON_SQUARES; ++bit)
+        {
+            SOUTH_MEN[bit] = random.nextLong ();
+            SOUTH_KINGS[bit] = random.nextLong ();
+            NORTH_MEN[bit] = random.nextLong ();
+            NORTH_KINGS[bit] = random.nextLong ();
+        }
+        NORTH_TO_MOVE = random.nextLong ();
+    }
+
+    // Do not instantiate.
+    private Zobrist ()
+    {
+    }
+
+    /**
+     * Return the key of one piece, by the bit number of its square.
+     */
+    static long pieceKey (int bit, boolean south, boolean king)
+    {
+        return
+            south
+                ? (king ? SOUTH_KINGS[bit] : SOUTH_MEN[bit])
+                : (king ? NORTH_KINGS[bit] : NORTH_MEN[bit]);
+    }
+
+    /**
+     * Return the combined key of the pieces on the given squares.
+     */
+    static long squaresKey (int squares, int southBits, int kingBits)
+    {
+        long key = 0;
+        while (squares != 0)
+        {
+            int bit = Integer.numberOfTrailingZeros (squares);
+            squares &= squares - 1;
+            key ^= pieceKey (bit,
+                (southBits & (1 << bit)) != 0, (kingBits & (1 << bit)) != 0);
+        }
+        return key;
+    }
+
+    /**
+     * Return the key of a whole board, not counting the player to move.
+     */
+    static long boardKey (int occupiedBits, int southBits, int kingBits)
+    {
+        return squaresKey (occupiedBits, southBits, kingBits);
+    }
+
+    /**
+     * Return the key of the player to move.
+     */
+    static long playerKey (int player)
+    {
+        return player == NORTH ? NORTH_TO_MOVE : 0;
+    }
+}